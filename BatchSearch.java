@@ -0,0 +1,217 @@
+package search;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs a batch of searches against an index that does not change while the batch runs. Each
+ * line of input is one query, its keywords separated by white space, searched as in
+ * topKSearch. Queries are run by a pool of threads, and the results are written out as soon
+ * as they are ready, but always in the order of the queries, one line per query:
+ * <pre>
+ *   kw1 kw2 ==> [doc1.txt, doc2.txt, ...]
+ * </pre>
+ * Blank lines are skipped. Run it from the command line as
+ * <pre>
+ *   java search.BatchSearch segmentFile queryFile [threads [k]]
+ * </pre>
+ * where segmentFile is an index saved by saveIndex, and queryFile is "-" to read queries from
+ * standard input. Results go to standard output, and the throughput to standard error.
+ *
+ */
+public class BatchSearch {
+
+	/**
+	 * What a batch did: how many queries it ran, and how long it took.
+	 */
+	public static class Report {
+
+		/**
+		 * Number of queries run.
+		 */
+		public final long queries;
+
+		/**
+		 * Time taken by the whole batch, in nanoseconds.
+		 */
+		public final long nanos;
+
+		Report(long queries, long nanos) {
+			this.queries = queries;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * Returns the number of queries run per second.
+		 *
+		 * @return Queries per second
+		 */
+		public double throughput() {
+			return nanos == 0 ? 0 : queries * 1e9 / nanos;
+		}
+
+		public String toString() {
+			return String.format("%d queries in %.1f ms, %.0f queries/s", queries, nanos / 1e6, throughput());
+		}
+	}
+
+	/**
+	 * Number of queries handed to a thread at a time.
+	 */
+	private static final int CHUNK = 64;
+
+	private final LittleSearchEngine engine;
+	private final int threads;
+	private final int k;
+
+	/**
+	 * Initializes a batch runner.
+	 *
+	 * @param engine Engine to search; must not be changed while a batch runs
+	 * @param threads Number of threads running queries, 1 runs them on the calling thread
+	 * @param k Maximum number of documents in each result
+	 */
+	public BatchSearch(LittleSearchEngine engine, int threads, int k) {
+		if (threads < 1){
+			throw new IllegalArgumentException("threads must be at least 1: " + threads);
+		}
+		if (k < 0){
+			throw new IllegalArgumentException("k must not be negative: " + k);
+		}
+		this.engine = engine;
+		this.threads = threads;
+		this.k = k;
+	}
+
+	/**
+	 * Runs every query read from a reader, writing each result in query order.
+	 *
+	 * @param queries Queries, one per line
+	 * @param results Where the results are written
+	 * @return Number of queries and time taken
+	 * @throws IOException If the queries cannot be read
+	 */
+	public Report run(BufferedReader queries, PrintWriter results)
+	throws IOException {
+		long start = System.nanoTime();
+		long count = 0;
+		String line;
+		if (threads == 1){
+			while ((line = queries.readLine()) != null){
+				if (!line.trim().isEmpty()){
+					results.println(search(line));
+					count++;
+				}
+			}
+			results.flush();
+			return new Report(count, System.nanoTime() - start);
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			// queries are handed to the pool in chunks, and at most this many chunks are run
+			// ahead of the output
+			int window = threads * 4;
+			ArrayDeque<Future<String[]>> pending = new ArrayDeque<Future<String[]>>(window);
+			ArrayList<String> chunk = new ArrayList<String>(CHUNK);
+			while (true){
+				line = queries.readLine();
+				if (line != null && !line.trim().isEmpty()){
+					chunk.add(line);
+					count++;
+				}
+				if (chunk.size() == CHUNK || (line == null && !chunk.isEmpty())){
+					final String[] lines = chunk.toArray(new String[chunk.size()]);
+					chunk.clear();
+					pending.add(pool.submit(new Callable<String[]>() {
+						public String[] call() {
+							for (int i = 0; i < lines.length; i++){
+								lines[i] = search(lines[i]);
+							}
+							return lines;
+						}
+					}));
+					if (pending.size() == window){
+						print(await(pending.remove()), results);
+					}
+				}
+				if (line == null){
+					break;
+				}
+			}
+			while (!pending.isEmpty()){
+				print(await(pending.remove()), results);
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		results.flush();
+		return new Report(count, System.nanoTime() - start);
+	}
+
+	/**
+	 * Runs one query, and formats its result as a line of output.
+	 */
+	private String search(String query) {
+		StringTokenizer st = new StringTokenizer(query);
+		String[] keywords = new String[st.countTokens()];
+		for (int i = 0; i < keywords.length; i++){
+			keywords[i] = st.nextToken();
+		}
+		return query.trim() + " ==> " + engine.topKSearch(k, keywords);
+	}
+
+	private static void print(String[] lines, PrintWriter results) {
+		for (String line : lines){
+			results.println(line);
+		}
+	}
+
+	private static String[] await(Future<String[]> query) {
+		try {
+			return query.get();
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while searching", e);
+		}
+		catch (ExecutionException e){
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException){
+				throw (RuntimeException)cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Runs a batch of queries from the command line.
+	 *
+	 * @param args Segment file, query file or "-", and optionally the number of threads and k
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2){
+			System.err.println("Usage: java search.BatchSearch segmentFile queryFile [threads [k]]");
+			return;
+		}
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int k = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+		try {
+			LittleSearchEngine engine = LittleSearchEngine.openIndex(args[0]);
+			BufferedReader queries = new BufferedReader(args[1].equals("-") 
+					? new InputStreamReader(System.in) : new FileReader(args[1]));
+			PrintWriter results = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+			try {
+				Report report = new BatchSearch(engine, threads, k).run(queries, results);
+				System.err.println(report);
+			}
+			finally {
+				queries.close();
+			}
+		}
+		catch (IOException e){
+			System.err.println("IO Error: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package search;
+
+import java.util.*;
+
+/**
+ * Boolean searches: the documents that contain all of some keywords and none of others. The
+ * posting lists are walked in order of document id, with the shortest list leading. Every
+ * document of the leading list is looked for in the next shortest list, and so on, by moving
+ * that list's cursor forward to the document; a cursor jumps over whole blocks of entries that
+ * end before the document, so a very common keyword costs about one skip entry per block of
+ * its list, not one entry per document. As soon as a list has no entry for the document, the
+ * leading list moves on to the document that list stopped at.
+ *
+ * Documents are ranked by the sum of the frequencies of the required keywords, and ties are
+ * broken in favor of the document that comes first in the first keyword's posting list.
+ *
+ */
+class BooleanSearch {
+
+	private BooleanSearch() {
+	}
+
+	/**
+	 * Returns the best k documents that contain all required keywords and no excluded one.
+	 *
+	 * @param index Index to search
+	 * @param required Keywords a document must contain, at least one
+	 * @param excluded Keywords a document must not contain
+	 * @param k Maximum number of documents to return
+	 * @return Ids of the matching documents, best first; null if no document matches
+	 */
+	static int[] search(IndexReader index, String[] required, String[] excluded, int k) {
+		int n = required.length;
+		if (n == 0){
+			return null;
+		}
+		// required lists, shortest first
+		long[] bySize = new long[n];
+		DocCursor[] lists = new DocCursor[n];
+		for (int i = 0; i < n; i++){
+			lists[i] = index.docPostings(required[i]);
+			if (lists[i] == null){
+				return null;
+			}
+			bySize[i] = ((long)lists[i].cost() << 32) | i;
+		}
+		Arrays.sort(bySize);
+		DocCursor[] cursors = new DocCursor[n];
+		int first = 0;
+		for (int j = 0; j < n; j++){
+			int i = (int)bySize[j];
+			cursors[j] = lists[i];
+			if (i == 0){
+				first = j;
+			}
+		}
+		int m = 0;
+		DocCursor[] nots = new DocCursor[excluded.length];
+		for (String keyword : excluded){
+			DocCursor list = index.docPostings(keyword);
+			if (list != null){
+				nots[m++] = list;
+			}
+		}
+
+		// no more documents match than are in the shortest list
+		TopDocs top = new TopDocs(k, cursors[0].cost());
+		int matched = 0;
+		DocCursor lead = cursors[0];
+		int doc = lead.nextDoc();
+		while (doc != DocCursor.NO_MORE_DOCS){
+			int next = doc;
+			for (int j = 1; j < n && next == doc; j++){
+				next = cursors[j].advance(doc);
+			}
+			if (next != doc){
+				// no document before next has all keywords
+				doc = next == DocCursor.NO_MORE_DOCS ? next : lead.advance(next);
+				continue;
+			}
+			boolean excludedHit = false;
+			for (int j = 0; j < m && !excludedHit; j++){
+				excludedHit = nots[j].advance(doc) == doc;
+			}
+			if (!excludedHit){
+				int score = 0;
+				for (int j = 0; j < n; j++){
+					score += cursors[j].freq();
+				}
+				// the first keyword's list is in descending order of frequency, then ascending document id
+				long tie = ((long)(Integer.MAX_VALUE - cursors[first].freq()) << 32) | doc;
+				top.offer(doc, score, tie);
+				matched++;
+			}
+			doc = lead.nextDoc();
+		}
+		return matched == 0 ? null : top.drain();
+	}
+}
@@ -0,0 +1,174 @@
+package search;
+
+import java.util.*;
+
+/**
+ * This class implements an open addressing hash table of strings that can be probed
+ * with a span of characters in a char array, so a lookup never needs a String to be built.
+ * A string is created only when a span that is not yet in the table is interned.
+ *
+ */
+class CharTable {
+
+	/**
+	 * Strings in the table, null for an empty slot. The length is always a power of 2.
+	 */
+	private String[] slots;
+
+	/**
+	 * Hash code of the string in the same slot.
+	 */
+	private int[] hashes;
+
+	/**
+	 * Number of strings in the table.
+	 */
+	private int size;
+
+	/**
+	 * Initializes an empty table with room for the given number of strings before it has to grow.
+	 *
+	 * @param expected Expected number of strings
+	 */
+	CharTable(int expected) {
+		int capacity = 16;
+		while (capacity < expected * 2){
+			capacity <<= 1;
+		}
+		slots = new String[capacity];
+		hashes = new int[capacity];
+	}
+
+	/**
+	 * Returns the number of strings in this table.
+	 *
+	 * @return Number of strings
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all strings from this table. The table keeps its capacity.
+	 */
+	void clear() {
+		if (size > 0){
+			Arrays.fill(slots, null);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Returns the string in this table that has the same characters as the given span.
+	 *
+	 * @param buf Characters
+	 * @param off Start of span in buf
+	 * @param len Length of span
+	 * @return Matching string, or null if there is none
+	 */
+	String get(char[] buf, int off, int len) {
+		int hash = hash(buf, off, len);
+		int mask = slots.length - 1;
+		for (int i = hash & mask; slots[i] != null; i = (i+1) & mask){
+			if (hashes[i] == hash && matches(slots[i], buf, off, len)){
+				return slots[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the string in this table that has the same characters as the given span,
+	 * adding a new string for the span if there is none.
+	 *
+	 * @param buf Characters
+	 * @param off Start of span in buf
+	 * @param len Length of span
+	 * @return Matching string
+	 */
+	String intern(char[] buf, int off, int len) {
+		int hash = hash(buf, off, len);
+		int mask = slots.length - 1;
+		int i = hash & mask;
+		for (; slots[i] != null; i = (i+1) & mask){
+			if (hashes[i] == hash && matches(slots[i], buf, off, len)){
+				return slots[i];
+			}
+		}
+		String str = new String(buf, off, len);
+		insert(i, str, hash);
+		return str;
+	}
+
+	/**
+	 * Adds a string to this table, unless an equal string is already in it.
+	 *
+	 * @param str String to add
+	 * @return True if the string was added, false if it was already in the table
+	 */
+	boolean add(String str) {
+		int hash = hash(str);
+		int mask = slots.length - 1;
+		int i = hash & mask;
+		for (; slots[i] != null; i = (i+1) & mask){
+			if (hashes[i] == hash && slots[i].equals(str)){
+				return false;
+			}
+		}
+		insert(i, str, hash);
+		return true;
+	}
+
+	private void insert(int slot, String str, int hash) {
+		slots[slot] = str;
+		hashes[slot] = hash;
+		size++;
+		if (size * 2 > slots.length){
+			grow();
+		}
+	}
+
+	private void grow() {
+		String[] oldSlots = slots;
+		int[] oldHashes = hashes;
+		slots = new String[oldSlots.length * 2];
+		hashes = new int[oldSlots.length * 2];
+		int mask = slots.length - 1;
+		for (int j = 0; j < oldSlots.length; j++){
+			if (oldSlots[j] == null){
+				continue;
+			}
+			int i = oldHashes[j] & mask;
+			while (slots[i] != null){
+				i = (i+1) & mask;
+			}
+			slots[i] = oldSlots[j];
+			hashes[i] = oldHashes[j];
+		}
+	}
+
+	private static boolean matches(String str, char[] buf, int off, int len) {
+		if (str.length() != len){
+			return false;
+		}
+		for (int i = 0; i < len; i++){
+			if (str.charAt(i) != buf[off+i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int hash(char[] buf, int off, int len) {
+		int h = 0;
+		for (int i = off; i < off + len; i++){
+			h = 31*h + buf[i];
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static int hash(String str) {
+		int h = str.hashCode();
+		return h ^ (h >>> 16);
+	}
+}
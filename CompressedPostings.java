@@ -0,0 +1,617 @@
+package search;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * This class is a posting list compressed for storage, read through a Cursor without decoding
+ * it into arrays. Entries are in ascending order of document id, each stored as the gap from
+ * the previous document id followed by the frequency, both as variable-byte ints. Entries are
+ * grouped in blocks of BLOCK; a skip table in front of the blocks holds the last document id
+ * of each block and the length of the block, so a cursor looking for a document id jumps over
+ * whole blocks that end before it. The layout is
+ * <pre>
+ *   number of entries, length of the skip table
+ *   skip table: for each block, gap between its last document id and that of the block before, 
+ *               then its length in bytes
+ *   blocks: for each entry, gap from the previous document id (the first one is id + 1), frequency
+ * </pre>
+ * all as variable-byte ints. 
+ * 
+ * The same class also writes and reads the frequency-ordered form of a posting list that index
+ * segments store. Since documents with the same frequency are kept in order of id, that list is
+ * a series of runs of one frequency, each with ascending document ids: every run is stored as
+ * its frequency, its length, and the gaps between its document ids.
+ *
+ */
+class CompressedPostings {
+
+	/**
+	 * Number of entries in a block.
+	 */
+	static final int BLOCK = 128;
+
+	/**
+	 * Bytes of the list, from start.
+	 */
+	private final ByteBuffer buf;
+	private final int start;
+
+	/**
+	 * Number of entries.
+	 */
+	private final int size;
+
+	/**
+	 * Last document id of each block in the high half, and the offset of the block in the low
+	 * half, for looking up single documents. Decoded from the skip table on first use.
+	 */
+	private volatile long[] blocks;
+
+	/**
+	 * Initializes a list over encoded bytes.
+	 *
+	 * @param buf Buffer holding the list
+	 * @param start Where the list starts in buf
+	 */
+	CompressedPostings(ByteBuffer buf, int start) {
+		this.buf = buf;
+		this.start = start;
+		int size = 0;
+		int shift = 0;
+		int pos = start;
+		byte b;
+		do {
+			b = buf.get(pos++);
+			size |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		this.size = size;
+	}
+
+	/**
+	 * Returns the number of entries.
+	 *
+	 * @return Number of entries
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a cursor over this list, before its first entry.
+	 *
+	 * @return New cursor
+	 */
+	DocCursor cursor() {
+		return new Cursor().reset(this);
+	}
+
+	/**
+	 * Looks up the frequency of a document. The block that may hold the document is found by
+	 * binary search, and only that block is read.
+	 *
+	 * @param doc Document id
+	 * @return Frequency of the document, 0 if it is not in this list
+	 */
+	int frequency(int doc) {
+		long[] table = blocks;
+		if (table == null){
+			table = blocks = decodeSkips();
+		}
+		// first block whose last document id is at least doc
+		int left = 0;
+		int right = table.length;
+		while (left < right){
+			int mid = (left+right) >>> 1;
+			if ((int)(table[mid] >>> 32) < doc){
+				left = mid + 1;
+			}
+			else {
+				right = mid;
+			}
+		}
+		if (left == table.length){
+			return 0;
+		}
+		int pos = (int)table[left];
+		int last = left == 0 ? -1 : (int)(table[left-1] >>> 32);
+		for (int i = Math.min(BLOCK, size - left * BLOCK); i > 0; i--){
+			long value = read(buf, pos);
+			pos = (int)value;
+			last += (int)(value >>> 32);
+			value = read(buf, pos);
+			pos = (int)value;
+			if (last >= doc){
+				return last == doc ? (int)(value >>> 32) : 0;
+			}
+		}
+		return 0;
+	}
+
+	private long[] decodeSkips() {
+		long value = read(buf, start);
+		int pos = (int)value;
+		value = read(buf, pos);
+		pos = (int)value;
+		int blockStart = pos + (int)(value >>> 32);
+		long[] table = new long[(size + BLOCK - 1) / BLOCK];
+		int last = -1;
+		for (int b = 0; b < table.length; b++){
+			value = read(buf, pos);
+			pos = (int)value;
+			last += (int)(value >>> 32);
+			table[b] = ((long)last << 32) | blockStart;
+			value = read(buf, pos);
+			pos = (int)value;
+			blockStart += (int)(value >>> 32);
+		}
+		return table;
+	}
+
+	/**
+	 * Compresses a posting list.
+	 *
+	 * @param list Posting list
+	 * @return Compressed list
+	 */
+	static CompressedPostings of(Postings list) {
+		return new CompressedPostings(ByteBuffer.wrap(encode(list)), 0);
+	}
+
+	/**
+	 * Encodes a posting list in order of document id.
+	 *
+	 * @param list Posting list
+	 * @return Encoded list
+	 */
+	static byte[] encode(Postings list) {
+		int size = list.size;
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++){
+			keys[i] = ((long)list.docs[i] << 32) | list.freqs[i];
+		}
+		Arrays.sort(keys);
+		int blocks = (size + BLOCK - 1) / BLOCK;
+		int[] lengths = new int[blocks];
+		int skipBytes = 0;
+		int blockBytes = 0;
+		int last = -1;
+		for (int b = 0; b < blocks; b++){
+			int end = Math.min(size, (b+1) * BLOCK);
+			int previous = last;
+			for (int i = b * BLOCK; i < end; i++){
+				int doc = (int)(keys[i] >>> 32);
+				lengths[b] += VarInt.size(doc - last) + VarInt.size((int)keys[i]);
+				last = doc;
+			}
+			skipBytes += VarInt.size(last - previous) + VarInt.size(lengths[b]);
+			blockBytes += lengths[b];
+		}
+		byte[] bytes = new byte[VarInt.size(size) + VarInt.size(skipBytes) + skipBytes + blockBytes];
+		int at = VarInt.write(bytes, 0, size);
+		at = VarInt.write(bytes, at, skipBytes);
+		last = -1;
+		for (int b = 0; b < blocks; b++){
+			int end = Math.min(size, (b+1) * BLOCK);
+			int doc = (int)(keys[end-1] >>> 32);
+			at = VarInt.write(bytes, at, doc - last);
+			at = VarInt.write(bytes, at, lengths[b]);
+			last = doc;
+		}
+		last = -1;
+		for (int i = 0; i < size; i++){
+			int doc = (int)(keys[i] >>> 32);
+			at = VarInt.write(bytes, at, doc - last);
+			at = VarInt.write(bytes, at, (int)keys[i]);
+			last = doc;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of bytes the frequency-ordered form of a posting list takes. The
+	 * documents of each frequency must be in ascending order of id.
+	 *
+	 * @param list Posting list
+	 * @return Encoded size
+	 */
+	static int sizeByFrequency(Postings list) {
+		int runs = 0;
+		int n = 0;
+		for (int i = 0; i < list.size; ){
+			int end = runEnd(list, i);
+			runs++;
+			n += VarInt.size(list.freqs[i]) + VarInt.size(end - i) + VarInt.size(list.docs[i]);
+			for (int j = i+1; j < end; j++){
+				n += VarInt.size(list.docs[j] - list.docs[j-1]);
+			}
+			i = end;
+		}
+		return VarInt.size(runs) + n;
+	}
+
+	/**
+	 * Writes the frequency-ordered form of a posting list. The documents of each frequency
+	 * must be in ascending order of id.
+	 *
+	 * @param list Posting list
+	 * @param bytes Buffer, with at least sizeByFrequency(list) bytes free at off
+	 * @param off Where to write
+	 * @return Offset just past the written bytes
+	 */
+	static int writeByFrequency(Postings list, byte[] bytes, int off) {
+		int runs = 0;
+		for (int i = 0; i < list.size; i = runEnd(list, i)){
+			runs++;
+		}
+		off = VarInt.write(bytes, off, runs);
+		for (int i = 0; i < list.size; ){
+			int end = runEnd(list, i);
+			off = VarInt.write(bytes, off, list.freqs[i]);
+			off = VarInt.write(bytes, off, end - i);
+			off = VarInt.write(bytes, off, list.docs[i]);
+			for (int j = i+1; j < end; j++){
+				off = VarInt.write(bytes, off, list.docs[j] - list.docs[j-1]);
+			}
+			i = end;
+		}
+		return off;
+	}
+
+	/**
+	 * Reads the frequency-ordered form of a posting list.
+	 *
+	 * @param buf Buffer holding the list
+	 * @param pos Where the list starts in buf
+	 * @param size Number of entries in the list
+	 * @return Posting list
+	 */
+	static Postings readByFrequency(ByteBuffer buf, int pos, int size) {
+		int[] docs = new int[size];
+		int[] freqs = new int[size];
+		long value = read(buf, pos);
+		pos = (int)value;
+		int runs = (int)(value >>> 32);
+		int n = 0;
+		for (int r = 0; r < runs; r++){
+			value = read(buf, pos);
+			pos = (int)value;
+			int freq = (int)(value >>> 32);
+			value = read(buf, pos);
+			pos = (int)value;
+			int end = n + (int)(value >>> 32);
+			int doc = 0;
+			for (int first = n; n < end; n++){
+				value = read(buf, pos);
+				pos = (int)value;
+				int gap = (int)(value >>> 32);
+				doc = n == first ? gap : doc + gap;
+				docs[n] = doc;
+				freqs[n] = freq;
+			}
+		}
+		return new Postings(docs, freqs, size);
+	}
+
+	/**
+	 * Returns the positions of the entries of a frequency-ordered list in order of document id,
+	 * by reading the same list in order of document id. Entries of equal frequency are in
+	 * ascending order of id in both forms, so each entry goes to the next free place in the
+	 * run of its frequency, which is found by binary search: there is no sort.
+	 *
+	 * @param list Posting list in descending order of frequency, then ascending order of id
+	 * @param byDoc The same list in order of document id
+	 * @return Positions in list of the entries, in order of document id
+	 */
+	static int[] docOrder(Postings list, CompressedPostings byDoc) {
+		// frequency and next free place of each run, highest frequency first
+		int[] runFreqs = new int[list.size];
+		int[] next = new int[list.size];
+		int runs = 0;
+		for (int i = 0; i < list.size; i++){
+			if (i == 0 || list.freqs[i] != list.freqs[i-1]){
+				runFreqs[runs] = list.freqs[i];
+				next[runs++] = i;
+			}
+		}
+		int[] order = new int[list.size];
+		Cursor cursor = new Cursor().reset(byDoc);
+		for (int j = 0; cursor.nextDoc() != DocCursor.NO_MORE_DOCS; j++){
+			int left = 0;
+			int right = runs - 1;
+			while (left < right){
+				int mid = (left+right) >>> 1;
+				if (runFreqs[mid] > cursor.freq()){
+					left = mid + 1;
+				}
+				else {
+					right = mid;
+				}
+			}
+			order[j] = next[left]++;
+		}
+		return order;
+	}
+
+	/**
+	 * Returns a copy of a posting list with the documents of each frequency in ascending order
+	 * of id, or the list itself if they already are. Positions are moved with their documents.
+	 *
+	 * @param list Posting list
+	 * @return List in the order the compressed forms need
+	 */
+	static Postings ordered(Postings list) {
+		boolean sorted = true;
+		for (int i = 1; i < list.size && sorted; i++){
+			sorted = list.freqs[i] != list.freqs[i-1] || list.docs[i] > list.docs[i-1];
+		}
+		if (sorted){
+			return list;
+		}
+		long[] keys = new long[list.size];
+		for (int i = 0; i < list.size; i++){
+			keys[i] = ((long)(Integer.MAX_VALUE - list.freqs[i]) << 32) | list.docs[i];
+		}
+		Arrays.sort(keys);
+		HashMap<Integer,byte[]> positions = new HashMap<Integer,byte[]>();
+		for (int i = 0; list.positions != null && i < list.size; i++){
+			positions.put(list.docs[i], list.positions[i]);
+		}
+		Postings copy = new Postings(new int[list.size], new int[list.size], list.size);
+		if (list.positions != null){
+			copy.positions = new byte[list.size][];
+		}
+		for (int i = 0; i < list.size; i++){
+			copy.docs[i] = (int)keys[i];
+			copy.freqs[i] = Integer.MAX_VALUE - (int)(keys[i] >>> 32);
+			if (copy.positions != null){
+				copy.positions[i] = positions.get(copy.docs[i]);
+			}
+		}
+		return copy;
+	}
+
+	private static int runEnd(Postings list, int i) {
+		int end = i + 1;
+		while (end < list.size && list.freqs[end] == list.freqs[i]){
+			end++;
+		}
+		return end;
+	}
+
+	/**
+	 * Reads a variable-byte int. The value and the offset after it are packed into one long,
+	 * so reading allocates nothing.
+	 *
+	 * @param buf Buffer
+	 * @param pos Offset of the int
+	 * @return Value in the high half, offset just past it in the low half
+	 */
+	private static long read(ByteBuffer buf, int pos) {
+		int v = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buf.get(pos++);
+			v |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return ((long)v << 32) | pos;
+	}
+
+	/**
+	 * Reads the frequency-ordered form of a posting list one entry at a time, as it is stored
+	 * in a segment, with the list in order of document id for looking up single documents.
+	 */
+	static class FrequencyCursor implements PostingsCursor {
+
+		private final ByteBuffer buf;
+
+		/**
+		 * The same list in order of document id.
+		 */
+		private final CompressedPostings byDoc;
+
+		/**
+		 * Offset of the next value, runs not started yet, and entries left in the current run.
+		 */
+		private int pos, runs, runLeft;
+
+		/**
+		 * Current entry.
+		 */
+		private int doc, freq;
+
+		/**
+		 * Initializes a cursor before the first entry of a list.
+		 *
+		 * @param buf Buffer holding the list
+		 * @param pos Where the frequency-ordered form starts in buf
+		 * @param byDoc The same list in order of document id
+		 */
+		FrequencyCursor(ByteBuffer buf, int pos, CompressedPostings byDoc) {
+			this.buf = buf;
+			this.byDoc = byDoc;
+			long value = read(buf, pos);
+			this.pos = (int)value;
+			runs = (int)(value >>> 32);
+		}
+
+		public int size() {
+			return byDoc.size();
+		}
+
+		public boolean next() {
+			long value;
+			if (runLeft == 0){
+				if (runs == 0){
+					return false;
+				}
+				runs--;
+				value = read(buf, pos);
+				pos = (int)value;
+				freq = (int)(value >>> 32);
+				value = read(buf, pos);
+				pos = (int)value;
+				runLeft = (int)(value >>> 32);
+				value = read(buf, pos);
+				pos = (int)value;
+				doc = (int)(value >>> 32);
+			}
+			else {
+				value = read(buf, pos);
+				pos = (int)value;
+				doc += (int)(value >>> 32);
+			}
+			runLeft--;
+			return true;
+		}
+
+		public int doc() {
+			return doc;
+		}
+
+		public int freq() {
+			return freq;
+		}
+
+		public int frequency(int doc) {
+			return byDoc.frequency(doc);
+		}
+	}
+
+	/**
+	 * Reads the entries of a CompressedPostings in order of document id. A cursor can be reset
+	 * to read another list, so a search can keep one cursor per keyword and allocate nothing
+	 * while it runs.
+	 */
+	static class Cursor implements DocCursor {
+
+		private ByteBuffer buf;
+
+		/**
+		 * Number of entries in the list.
+		 */
+		private int size;
+
+		/**
+		 * Offset of the next skip table entry, of the next entry in the current block, and of
+		 * the block after the current one.
+		 */
+		private int skip, pos, nextBlock;
+
+		/**
+		 * Entries not read yet in the current block, and in the whole list.
+		 */
+		private int blockLeft, left;
+
+		/**
+		 * Last document id of the current block.
+		 */
+		private int blockLast;
+
+		/**
+		 * Current entry.
+		 */
+		private int doc, freq;
+
+		/**
+		 * Starts reading a list, before its first entry.
+		 *
+		 * @param list List to read
+		 * @return This cursor
+		 */
+		Cursor reset(CompressedPostings list) {
+			buf = list.buf;
+			size = list.size;
+			pos = list.start;
+			left = readVarInt();
+			int skipBytes = readVarInt();
+			skip = pos;
+			nextBlock = pos + skipBytes;
+			blockLeft = 0;
+			blockLast = -1;
+			doc = -1;
+			freq = 0;
+			return this;
+		}
+
+		public int cost() {
+			return size;
+		}
+
+		public int doc() {
+			return doc;
+		}
+
+		public int freq() {
+			return freq;
+		}
+
+		public int nextDoc() {
+			if (blockLeft == 0){
+				if (left == 0){
+					return doc = NO_MORE_DOCS;
+				}
+				enterBlock();
+			}
+			doc += readVarInt();
+			freq = readVarInt();
+			blockLeft--;
+			left--;
+			return doc;
+		}
+
+		/**
+		 * Moves to the first entry whose document id is at least target. Blocks that end
+		 * before target are skipped without being read. The cursor never moves back: if the
+		 * current entry is already at or past target, it stays there.
+		 *
+		 * @param target Document id
+		 * @return Document id of the new current entry, NO_MORE_DOCS if there is none
+		 */
+		public int advance(int target) {
+			if (doc >= target){
+				return doc;
+			}
+			while (blockLeft == 0 || blockLast < target){
+				if (blockLeft > 0){
+					// the rest of this block is below target
+					left -= blockLeft;
+					blockLeft = 0;
+					doc = blockLast;
+				}
+				if (left == 0){
+					return doc = NO_MORE_DOCS;
+				}
+				enterBlock();
+			}
+			while (nextDoc() < target){
+			}
+			return doc;
+		}
+
+		private void enterBlock() {
+			pos = skip;
+			blockLast += readVarInt();
+			int length = readVarInt();
+			skip = pos;
+			pos = nextBlock;
+			nextBlock += length;
+			blockLeft = Math.min(BLOCK, left);
+		}
+
+		private int readVarInt() {
+			int v = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buf.get(pos++);
+				v |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return v;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package search;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Checks that searches running next to updateDocument always find the document being
+ * re-indexed: taking out its old copy and putting in the new one must be published as one
+ * snapshot. The check is run on an index held in memory and on one kept in segments. Run it as
+ * <pre>
+ *   java search.ConcurrentReadsTest
+ * </pre>
+ * It prints the number of searches made, and throws an AssertionError if any of them missed
+ * the document.
+ *
+ */
+public class ConcurrentReadsTest {
+
+	/**
+	 * Number of times the document is re-indexed, and number of searching threads.
+	 */
+	private static final int UPDATES = 2000, READERS = 3;
+
+	/**
+	 * Runs the check.
+	 *
+	 * @param args Not used
+	 * @throws Exception If the documents cannot be written, or a thread fails
+	 */
+	public static void main(String[] args)
+	throws Exception {
+		File dir = createDirectory();
+		File docsFile = new File(dir, "docs.txt");
+		PrintWriter docs = new PrintWriter(docsFile);
+		for (int i = 0; i < 20; i++){
+			File doc = new File(dir, "doc" + i + ".txt");
+			PrintWriter out = new PrintWriter(doc);
+			out.println(i == 7 ? "needle needle hay" : "hay straw hay");
+			out.close();
+			docs.println(doc.getPath());
+		}
+		docs.close();
+		File noiseFile = new File(dir, "noise.txt");
+		new PrintWriter(noiseFile).close();
+
+		LittleSearchEngine memory = new LittleSearchEngine();
+		memory.makeIndex(docsFile.getPath(), noiseFile.getPath());
+		memory.enableConcurrentReads(1);
+		check("memory", memory, new File(dir, "doc7.txt").getPath());
+
+		LittleSearchEngine segmented = new LittleSearchEngine();
+		segmented.enableSegments(new File(dir, "segments").getPath(), 1, 2);
+		segmented.makeIndex(docsFile.getPath(), noiseFile.getPath());
+		check("segments", segmented, new File(dir, "doc7.txt").getPath());
+		segmented.closeSegments();
+	}
+
+	/**
+	 * Re-indexes a document over and over while other threads search for it.
+	 */
+	private static void check(String name, final LittleSearchEngine engine, final String document)
+	throws Exception {
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicLong searches = new AtomicLong();
+		final AtomicLong misses = new AtomicLong();
+		ExecutorService readers = Executors.newFixedThreadPool(READERS);
+		ArrayList<Future<?>> running = new ArrayList<Future<?>>();
+		for (int i = 0; i < READERS; i++){
+			running.add(readers.submit(new Runnable() {
+				public void run() {
+					while (!done.get()){
+						ArrayList<String> found = engine.topKSearch(5, "needle");
+						if (found == null || !found.contains(document)){
+							misses.incrementAndGet();
+						}
+						searches.incrementAndGet();
+					}
+				}
+			}));
+		}
+		try {
+			for (int i = 0; i < UPDATES; i++){
+				engine.updateDocument(document);
+			}
+		}
+		finally {
+			done.set(true);
+			for (Future<?> reader : running){
+				reader.get();
+			}
+			readers.shutdown();
+		}
+		System.out.println(name + ": " + searches.get() + " searches, " + misses.get() + " missed the document");
+		if (misses.get() > 0){
+			throw new AssertionError(name + ": " + misses.get() + " searches did not find " + document);
+		}
+	}
+
+	private static File createDirectory()
+	throws IOException {
+		File dir = File.createTempFile("concurrent", "");
+		if (!dir.delete() || !dir.mkdir()){
+			throw new IOException("Cannot create directory " + dir);
+		}
+		return dir;
+	}
+}
@@ -0,0 +1,221 @@
+package search;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Writes a synthetic corpus for benchmarks: documents of made-up words whose frequencies follow
+ * a Zipf distribution, as word frequencies in real text do, so a few words are very common and
+ * most are rare. The same seed always gives the same corpus. Words are sometimes capitalized,
+ * or followed by punctuation, and the most common words are listed as noise words, so
+ * getKeyWord has the same kinds of words to deal with as with real documents.
+ * 
+ * The corpus is written to a directory, as
+ * <pre>
+ *   docs.txt           names of all document files, one per line, as makeIndex expects
+ *   noise.txt          noise words, one per line
+ *   d0000/doc0.txt     documents, 1000 to a subdirectory
+ * </pre>
+ * Document names in docs.txt start with the directory name as given. Run it as
+ * <pre>
+ *   java search.CorpusGenerator directory documents [seed [vocabulary [exponent]]]
+ * </pre>
+ *
+ */
+public class CorpusGenerator {
+
+	/**
+	 * Documents in each subdirectory.
+	 */
+	private static final int PER_DIRECTORY = 1000;
+
+	/**
+	 * Number of most common words written to noise.txt.
+	 */
+	private static final int NOISE_WORDS = 50;
+
+	private static final String[] ONSETS = { "b", "c", "d", "f", "g", "h", "j", "k", "l", "m", "n", "p", 
+		"r", "s", "t", "v", "w", "z", "br", "ch", "cl", "dr", "fl", "gr", "pl", "pr", "sh", "st", "th", "tr" };
+	private static final String[] VOWELS = { "a", "e", "i", "o", "u", "ai", "ea", "ee", "io", "ou" };
+	private static final String[] PUNCTUATION = { ".", ",", ";", ":", "!", "?" };
+
+	private final Random random;
+
+	/**
+	 * Vocabulary, most common word first.
+	 */
+	private final String[] words;
+
+	/**
+	 * Cumulative probability of each word of the vocabulary.
+	 */
+	private final double[] cumulative;
+
+	/**
+	 * Initializes a generator.
+	 *
+	 * @param seed Seed of the random numbers
+	 * @param vocabulary Number of distinct words
+	 * @param exponent Exponent of the Zipf distribution, 1 for English text
+	 */
+	public CorpusGenerator(long seed, int vocabulary, double exponent) {
+		if (vocabulary < 1){
+			throw new IllegalArgumentException("vocabulary must be at least 1: " + vocabulary);
+		}
+		random = new Random(seed);
+		words = new String[vocabulary];
+		HashSet<String> seen = new HashSet<String>();
+		for (int i = 0; i < vocabulary; i++){
+			String word;
+			do {
+				word = makeWord(1 + Math.min(2, (int)Math.log10(i + 1) / 2) + random.nextInt(2));
+			} while (!seen.add(word));
+			words[i] = word;
+		}
+		cumulative = new double[vocabulary];
+		double total = 0;
+		for (int i = 0; i < vocabulary; i++){
+			total += 1 / Math.pow(i + 1, exponent);
+			cumulative[i] = total;
+		}
+		for (int i = 0; i < vocabulary; i++){
+			cumulative[i] /= total;
+		}
+	}
+
+	/**
+	 * Makes up a word of a number of syllables. Common words get fewer syllables, as in real text.
+	 */
+	private String makeWord(int syllables) {
+		StringBuilder sb = new StringBuilder();
+		for (int s = 0; s < syllables; s++){
+			sb.append(ONSETS[random.nextInt(ONSETS.length)]).append(VOWELS[random.nextInt(VOWELS.length)]);
+		}
+		if (random.nextInt(3) == 0){
+			sb.append(ONSETS[random.nextInt(18)]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns a word drawn from the Zipf distribution.
+	 *
+	 * @return Word of the vocabulary
+	 */
+	public String nextWord() {
+		int i = Arrays.binarySearch(cumulative, random.nextDouble());
+		return words[Math.min(words.length - 1, i < 0 ? -i-1 : i)];
+	}
+
+	/**
+	 * Returns the text of a document: lines of words, some of them capitalized or followed by
+	 * punctuation.
+	 *
+	 * @param length Number of words
+	 * @return Text of the document
+	 */
+	public String nextDocument(int length) {
+		StringBuilder sb = new StringBuilder(length * 8);
+		for (int i = 0; i < length; i++){
+			String word = nextWord();
+			int r = random.nextInt(100);
+			if (r < 5){
+				word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+			}
+			sb.append(word);
+			if (r >= 90){
+				sb.append(PUNCTUATION[r % PUNCTUATION.length]);
+			}
+			sb.append(i % 12 == 11 ? '\n' : ' ');
+		}
+		return sb.append('\n').toString();
+	}
+
+	/**
+	 * Returns the most common words, for use as noise words.
+	 *
+	 * @param count Number of words
+	 * @return Most common words, most common first
+	 */
+	public String[] commonWords(int count) {
+		return Arrays.copyOf(words, Math.min(count, words.length));
+	}
+
+	/**
+	 * Writes a corpus to a directory.
+	 *
+	 * @param directory Directory, created if needed
+	 * @param documents Number of documents
+	 * @param minLength Fewest words in a document
+	 * @param maxLength Most words in a document
+	 * @throws IOException If the files cannot be written
+	 */
+	public void write(File directory, int documents, int minLength, int maxLength)
+	throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()){
+			throw new IOException("Cannot create " + directory);
+		}
+		PrintWriter noise = writer(new File(directory, "noise.txt"));
+		try {
+			for (String word : commonWords(NOISE_WORDS)){
+				noise.println(word);
+			}
+		}
+		finally {
+			noise.close();
+		}
+		PrintWriter docs = writer(new File(directory, "docs.txt"));
+		try {
+			File sub = null;
+			for (int d = 0; d < documents; d++){
+				if (d % PER_DIRECTORY == 0){
+					sub = new File(directory, String.format("d%04d", d / PER_DIRECTORY));
+					if (!sub.isDirectory() && !sub.mkdirs()){
+						throw new IOException("Cannot create " + sub);
+					}
+				}
+				File doc = new File(sub, "doc" + d + ".txt");
+				int length = minLength + random.nextInt(maxLength - minLength + 1);
+				Writer out = new OutputStreamWriter(new FileOutputStream(doc), StandardCharsets.UTF_8);
+				try {
+					out.write(nextDocument(length));
+				}
+				finally {
+					out.close();
+				}
+				docs.println(doc.getPath());
+			}
+		}
+		finally {
+			docs.close();
+		}
+	}
+
+	private static PrintWriter writer(File file)
+	throws IOException {
+		return new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Writes a corpus from the command line.
+	 *
+	 * @param args Directory, number of documents, and optionally seed, vocabulary size and exponent
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2){
+			System.err.println("Usage: java search.CorpusGenerator directory documents [seed [vocabulary [exponent]]]");
+			return;
+		}
+		int documents = Integer.parseInt(args[1]);
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+		int vocabulary = args.length > 3 ? Integer.parseInt(args[3]) : 50000;
+		double exponent = args.length > 4 ? Double.parseDouble(args[4]) : 1.0;
+		try {
+			new CorpusGenerator(seed, vocabulary, exponent).write(new File(args[0]), documents, 50, 500);
+		}
+		catch (IOException e){
+			System.err.println("IO Error: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package search;
+
+/**
+ * This class sums up the scores of documents over several posting lists. It is an open
+ * addressing hash table keyed by document id, so joining posting lists costs one probe per
+ * entry instead of a scan of the documents seen so far. Each document also keeps the tie key
+ * it was first added with.
+ *
+ */
+class DocAccumulator {
+
+	/**
+	 * Document id + 1 in each slot, 0 for an empty slot. The length is always a power of 2.
+	 */
+	private int[] keys;
+
+	/**
+	 * Score and tie key of the document in the same slot.
+	 */
+	private double[] scores;
+	private long[] ties;
+
+	/**
+	 * Number of documents in the table.
+	 */
+	private int size;
+
+	/**
+	 * Initializes an empty table with room for the given number of documents before it has to grow.
+	 *
+	 * @param expected Expected number of documents
+	 */
+	DocAccumulator(int expected) {
+		int capacity = 16;
+		while (capacity < expected * 2){
+			capacity <<= 1;
+		}
+		keys = new int[capacity];
+		scores = new double[capacity];
+		ties = new long[capacity];
+	}
+
+	/**
+	 * Returns the number of documents in this table.
+	 *
+	 * @return Number of documents
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Adds to the score of a document. A document that is not in the table yet is added with
+	 * the given score and tie key; otherwise the tie key is left as it was.
+	 *
+	 * @param doc Document id
+	 * @param score Score to add
+	 * @param tie Tie key, used only if the document is new
+	 */
+	void add(int doc, double score, long tie) {
+		int mask = keys.length - 1;
+		int i = mix(doc) & mask;
+		while (keys[i] != 0){
+			if (keys[i] == doc+1){
+				scores[i] += score;
+				return;
+			}
+			i = (i+1) & mask;
+		}
+		keys[i] = doc+1;
+		scores[i] = score;
+		ties[i] = tie;
+		size++;
+		if (size * 2 > keys.length){
+			grow();
+		}
+	}
+
+	/**
+	 * Returns true if a document is in this table.
+	 *
+	 * @param doc Document id
+	 * @return True if the document has been added
+	 */
+	boolean contains(int doc) {
+		int mask = keys.length - 1;
+		for (int i = mix(doc) & mask; keys[i] != 0; i = (i+1) & mask){
+			if (keys[i] == doc+1){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Offers every document in this table to a heap of top documents.
+	 *
+	 * @param top Heap that keeps the best documents
+	 */
+	void collect(TopDocs top) {
+		for (int i = 0; i < keys.length; i++){
+			if (keys[i] != 0){
+				top.offer(keys[i]-1, scores[i], ties[i]);
+			}
+		}
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		double[] oldScores = scores;
+		long[] oldTies = ties;
+		keys = new int[oldKeys.length * 2];
+		scores = new double[oldKeys.length * 2];
+		ties = new long[oldKeys.length * 2];
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++){
+			if (oldKeys[j] == 0){
+				continue;
+			}
+			int i = mix(oldKeys[j]-1) & mask;
+			while (keys[i] != 0){
+				i = (i+1) & mask;
+			}
+			keys[i] = oldKeys[j];
+			scores[i] = oldScores[j];
+			ties[i] = oldTies[j];
+		}
+	}
+
+	private static int mix(int doc) {
+		int h = doc * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
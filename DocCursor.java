@@ -0,0 +1,53 @@
+package search;
+
+/**
+ * Reads the posting list of a keyword in ascending order of document id, for searches that
+ * walk several lists side by side. A cursor can jump ahead to a document id, skipping the
+ * entries before it without reading all of them.
+ *
+ */
+interface DocCursor {
+
+	/**
+	 * Document id returned by a cursor that has run past the last entry.
+	 */
+	int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+	/**
+	 * Returns the number of entries in the list, or more if some entries will be skipped over,
+	 * as the entries of deleted documents are.
+	 *
+	 * @return Upper bound on the number of entries
+	 */
+	int cost();
+
+	/**
+	 * Returns the document id of the current entry.
+	 *
+	 * @return Document id, -1 before the first entry, NO_MORE_DOCS after the last
+	 */
+	int doc();
+
+	/**
+	 * Returns the frequency of the current entry.
+	 *
+	 * @return Frequency
+	 */
+	int freq();
+
+	/**
+	 * Moves to the next entry.
+	 *
+	 * @return Its document id, NO_MORE_DOCS if there are no more entries
+	 */
+	int nextDoc();
+
+	/**
+	 * Moves to the first entry whose document id is at least target. The cursor never moves
+	 * back: if the current entry is already at or past target, it stays there.
+	 *
+	 * @param target Document id
+	 * @return Document id of the new current entry, NO_MORE_DOCS if there is none
+	 */
+	int advance(int target);
+}
@@ -0,0 +1,252 @@
+package search;
+
+import java.util.*;
+
+/**
+ * This class assigns int ids to document names. Ids are handed out in the order documents
+ * are first seen, starting at 0, so posting lists can refer to a document by id instead of
+ * repeating its name. Names are kept in a TermTable, so each one is stored once, as
+ * characters in a shared arena, however many posting lists the document is in.
+ *
+ */
+class DocumentTable {
+
+	/**
+	 * Names of all documents ever added, with their name ids.
+	 */
+	private final TermTable names;
+
+	/**
+	 * Name id (-1 if the document was removed), length and word count of each document, in
+	 * pages of PAGE documents: the name id of document id is at 3*(id % PAGE) in page id / PAGE,
+	 * followed by its length, the number of keyword occurrences in it, and its number of words,
+	 * noise words included.
+	 */
+	private int[][] pages;
+
+	/**
+	 * Generation each page was made in, and the generation the array of pages was made in.
+	 * As in KeywordTable, a copy shares the pages with this table, and a page from an older
+	 * generation is copied before it is changed.
+	 */
+	private int[] pageGenerations;
+	private int pagesGeneration;
+
+	/**
+	 * Number of copies taken of this table so far.
+	 */
+	private int generation;
+
+	/**
+	 * Document id of each name, indexed by name id, -1 if the document was removed.
+	 */
+	private int[] docIds;
+
+	/**
+	 * Number of ids handed out.
+	 */
+	private int size;
+
+	/**
+	 * Number of documents in a page, as a power of 2.
+	 */
+	private static final int PAGE_BITS = 10, PAGE = 1 << PAGE_BITS;
+
+	/**
+	 * Ids of the keywords of each document in the KeywordTable of the index, indexed by
+	 * document id, and the number in use in each array. These are the posting lists a
+	 * document appears in, so it can be taken out of the index again. Null in a snapshot.
+	 */
+	private int[][] keywords;
+	private int[] keywordCounts;
+
+	/**
+	 * Initializes an empty document table.
+	 */
+	DocumentTable() {
+		names = new TermTable(16);
+		pages = new int[1][];
+		pageGenerations = new int[1];
+		docIds = new int[16];
+		keywords = new int[16][];
+		keywordCounts = new int[16];
+	}
+
+	/**
+	 * Initializes a read-only copy of a table, without the keywords of its documents.
+	 */
+	private DocumentTable(DocumentTable table) {
+		names = table.names.view();
+		pages = table.pages;
+		size = table.size;
+	}
+
+	/**
+	 * Returns a copy of this table that does not change when this table does, for an index
+	 * snapshot. The copy has the names and lengths of the documents, but not their keywords.
+	 *
+	 * @return Read-only copy of this table
+	 */
+	DocumentTable copy() {
+		DocumentTable copy = new DocumentTable(this);
+		generation++;
+		return copy;
+	}
+
+	/**
+	 * Returns the id of a document, assigning the next free id if the document is new.
+	 *
+	 * @param name Document name
+	 * @return Id of the document
+	 */
+	int id(String name) {
+		int known = names.size();
+		int nameId = names.add(name);
+		if (nameId < known && docIds[nameId] != -1){
+			return docIds[nameId];
+		}
+		if (nameId == docIds.length){
+			docIds = Arrays.copyOf(docIds, nameId * 2);
+		}
+		if (size == keywords.length){
+			keywords = Arrays.copyOf(keywords, size * 2);
+			keywordCounts = Arrays.copyOf(keywordCounts, size * 2);
+		}
+		set(size, nameId, 0, 0);
+		docIds[nameId] = size;
+		return size++;
+	}
+
+	/**
+	 * Returns the id of a document without assigning one.
+	 *
+	 * @param name Document name
+	 * @return Id of the document, -1 if the document is not in this table
+	 */
+	int find(String name) {
+		int nameId = names.find(name);
+		return nameId == -1 ? -1 : docIds[nameId];
+	}
+
+	/**
+	 * Returns the name of a document.
+	 *
+	 * @param id Document id
+	 * @return Document name, null if the document was removed
+	 */
+	String name(int id) {
+		int nameId = pages[id >>> PAGE_BITS][3 * (id & (PAGE-1))];
+		return nameId == -1 ? null : names.term(nameId);
+	}
+
+	/**
+	 * Removes a document. Its id is not handed out again.
+	 *
+	 * @param id Document id
+	 */
+	void remove(int id) {
+		docIds[pages[id >>> PAGE_BITS][3 * (id & (PAGE-1))]] = -1;
+		set(id, -1, 0, 0);
+		keywords[id] = null;
+		keywordCounts[id] = 0;
+	}
+
+	/**
+	 * Records that a keyword occurs in a document, and adds its frequency to the length of
+	 * the document.
+	 *
+	 * @param id Document id
+	 * @param keyword Id of the keyword in the KeywordTable of the index
+	 * @param frequency Number of times the keyword occurs in the document
+	 */
+	void addKeyword(int id, int keyword, int frequency) {
+		set(id, pages[id >>> PAGE_BITS][3 * (id & (PAGE-1))], length(id) + frequency, words(id));
+		int[] list = keywords[id];
+		int count = keywordCounts[id];
+		if (list == null){
+			list = keywords[id] = new int[8];
+		}
+		else if (count == list.length){
+			list = keywords[id] = Arrays.copyOf(list, count * 2);
+		}
+		list[count] = keyword;
+		keywordCounts[id] = count+1;
+	}
+
+	/**
+	 * Returns the keywords recorded for a document.
+	 *
+	 * @param id Document id
+	 * @return Ids of the keywords of the document in the KeywordTable of the index
+	 */
+	int[] keywords(int id) {
+		if (keywords[id] == null){
+			return new int[0];
+		}
+		return Arrays.copyOf(keywords[id], keywordCounts[id]);
+	}
+
+	/**
+	 * Returns the length of a document.
+	 *
+	 * @param id Document id
+	 * @return Number of keyword occurrences in the document, 0 if it was removed
+	 */
+	int length(int id) {
+		return pages[id >>> PAGE_BITS][3 * (id & (PAGE-1)) + 1];
+	}
+
+	/**
+	 * Records the number of words of a document.
+	 *
+	 * @param id Document id
+	 * @param words Number of words in the document, noise words included
+	 */
+	void setWords(int id, int words) {
+		set(id, pages[id >>> PAGE_BITS][3 * (id & (PAGE-1))], length(id), words);
+	}
+
+	/**
+	 * Returns the number of words of a document.
+	 *
+	 * @param id Document id
+	 * @return Number of words in the document, noise words included, 0 if it was removed or
+	 * its words were not counted
+	 */
+	int words(int id) {
+		return pages[id >>> PAGE_BITS][3 * (id & (PAGE-1)) + 2];
+	}
+
+	/**
+	 * Sets the name id, the length and the word count of a document, first copying what may be
+	 * shared with a copy of this table.
+	 */
+	private void set(int id, int nameId, int length, int words) {
+		int p = id >>> PAGE_BITS;
+		if (pagesGeneration != generation || p == pages.length){
+			pages = Arrays.copyOf(pages, p == pages.length ? pages.length * 2 : pages.length);
+			pageGenerations = Arrays.copyOf(pageGenerations, pages.length);
+			pagesGeneration = generation;
+		}
+		if (pages[p] == null){
+			pages[p] = new int[3 * PAGE];
+			pageGenerations[p] = generation;
+		}
+		else if (pageGenerations[p] != generation){
+			pages[p] = pages[p].clone();
+			pageGenerations[p] = generation;
+		}
+		pages[p][3 * (id & (PAGE-1))] = nameId;
+		pages[p][3 * (id & (PAGE-1)) + 1] = length;
+		pages[p][3 * (id & (PAGE-1)) + 2] = words;
+	}
+
+	/**
+	 * Returns the number of ids handed out, including ids of removed documents.
+	 *
+	 * @return Number of documents
+	 */
+	int size() {
+		return size;
+	}
+}
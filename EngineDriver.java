@@ -5,27 +5,51 @@ import java.util.*;
 
 public class EngineDriver {
 
+	/**
+	 * Runs the search engine from the console. With no arguments the index is built from the
+	 * documents. With the name of a segment file as argument, the index is opened from that
+	 * file if it exists, and otherwise built from the documents and then saved to it.
+	 */
 	public static void main(String[]args){
 		Scanner sc = new Scanner(System.in);
-		System.out.println("Enter the file containing the documents to be scanned: ");
-		String docsFile = sc.next();
-		System.out.println("\nEnter the file containing the noise words: ");
-		String noiseWordsFile = sc.next();
-		LittleSearchEngine engine = new LittleSearchEngine();
-		try{
-			engine.makeIndex(docsFile, noiseWordsFile);
-			
+		String indexFile = args.length > 0 ? args[0] : null;
+		LittleSearchEngine engine;
+		if (indexFile != null && new File(indexFile).exists()){
+			try {
+				engine = LittleSearchEngine.openIndex(indexFile);
+			}
+			catch (IOException e){
+				System.out.println("Cannot open index " + indexFile + ": " + e.getMessage());
+				return;
+			}
 		}
-		catch (FileNotFoundException e){
-			System.out.println("File not found");
-			return;
+		else {
+			System.out.println("Enter the file containing the documents to be scanned: ");
+			String docsFile = sc.next();
+			System.out.println("\nEnter the file containing the noise words: ");
+			String noiseWordsFile = sc.next();
+			engine = new LittleSearchEngine();
+			try{
+				engine.makeIndex(docsFile, noiseWordsFile, Runtime.getRuntime().availableProcessors());
+				
+			}
+			catch (FileNotFoundException e){
+				System.out.println("File not found");
+				return;
+			}
+			if (indexFile != null){
+				try {
+					engine.saveIndex(indexFile);
+				}
+				catch (IOException e){
+					System.out.println("Cannot save index " + indexFile + ": " + e.getMessage());
+				}
+			}
 		}
 		
-		Set<String> keys = engine.keywordsIndex.keySet();
-		Iterator<String> iterator = keys.iterator();
-		while (iterator.hasNext()){
-			String key = iterator.next();
-			System.out.println(key + " ==> " + engine.keywordsIndex.get(key).toString());
+		IndexReader index = engine.reader();
+		for (String key : index.keywords()){
+			System.out.println(key + " ==> " + index.postings(key).toString(index));
 		}
 		
 		System.out.println("Enter the first keyword: ");
@@ -47,8 +71,9 @@ public class EngineDriver {
 		System.out.println("\nEnter item to find frequency or \"quit\" to exit: ");
 		String item = sc.next();
 		while (!item.toLowerCase().equals("quit")){
-			if (engine.keywordsIndex.get(item.toLowerCase()) != null){
-				System.out.println(engine.keywordsIndex.get(item.toLowerCase()).toString());
+			Postings postings = index.postings(item.toLowerCase());
+			if (postings != null){
+				System.out.println(postings.toString(index));
 			}
 			else {
 				System.out.println("Item does not appear in the documents...");
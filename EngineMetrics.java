@@ -0,0 +1,401 @@
+package search;
+
+import java.util.concurrent.atomic.*;
+
+import jdk.jfr.*;
+
+/**
+ * Counters and latency histograms of a LittleSearchEngine. Metrics are off until turned on with
+ * LittleSearchEngine.enableMetrics; while they are off the engine does no timing at all. When
+ * they are on, the engine records:
+ * <ul>
+ * <li>for every document scanned by loadKeyWords, the time taken and the number of words;</li>
+ * <li>for every document merged by mergeKeyWords, the time taken;</li>
+ * <li>the wall clock time of makeIndex and addDocument, for documents and words per second;</li>
+ * <li>the latency of every search, by kind of search.</li>
+ * </ul>
+ * The same measurements can also be emitted as JFR events (search.Document and search.Query),
+ * so they show up in a flight recording next to GC and thread activity. All methods may be
+ * called from any thread.
+ *
+ */
+public class EngineMetrics {
+
+	/**
+	 * Kinds of searches timed separately.
+	 */
+	public enum Query {
+		TOP_K, RANKED, WILDCARD, RANGE, FUZZY, PHRASE, NEAR, BOOLEAN
+	}
+
+	/**
+	 * A histogram of non-negative values, such as latencies in nanoseconds. Values are counted in
+	 * buckets whose width grows with the value: each power of 2 is split into 16 buckets, so a
+	 * percentile is accurate to within about 6%, in a fixed array of about a thousand counts.
+	 * Recording a value is a few instructions and a handful of atomic adds.
+	 */
+	public static class Histogram {
+
+		/**
+		 * Number of buckets each power of 2 is split into, as a power of 2.
+		 */
+		private static final int SUB_BITS = 4;
+		private static final int SUB = 1 << SUB_BITS;
+
+		private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+
+		/**
+		 * Records a value.
+		 *
+		 * @param value Non-negative value
+		 */
+		public void record(long value) {
+			if (value < 0){
+				value = 0;
+			}
+			counts.incrementAndGet(bucket(value));
+			count.increment();
+			sum.add(value);
+			long m = max.get();
+			while (value > m && !max.compareAndSet(m, value)){
+				m = max.get();
+			}
+		}
+
+		/**
+		 * Returns the number of values recorded.
+		 *
+		 * @return Number of values
+		 */
+		public long count() {
+			return count.sum();
+		}
+
+		/**
+		 * Returns the mean of the values recorded.
+		 *
+		 * @return Mean, 0 if there are none
+		 */
+		public double mean() {
+			long n = count.sum();
+			return n == 0 ? 0 : (double)sum.sum() / n;
+		}
+
+		/**
+		 * Returns the largest value recorded.
+		 *
+		 * @return Largest value, 0 if there are none
+		 */
+		public long max() {
+			return max.get();
+		}
+
+		/**
+		 * Returns the value below which a given fraction of the recorded values fall. The value
+		 * returned is the top of the bucket the percentile falls in, so it is never below the
+		 * exact percentile, and at most about 6% above it.
+		 *
+		 * @param fraction Fraction of values, 0.5 for the median, 0.99 for the 99th percentile
+		 * @return Percentile, 0 if there are no values
+		 */
+		public long percentile(double fraction) {
+			long n = count.sum();
+			if (n == 0){
+				return 0;
+			}
+			long rank = (long)Math.ceil(fraction * n);
+			if (rank < 1){
+				rank = 1;
+			}
+			long seen = 0;
+			for (int i = 0; i < counts.length(); i++){
+				seen += counts.get(i);
+				if (seen >= rank){
+					return Math.min(highest(i), max.get());
+				}
+			}
+			return max.get();
+		}
+
+		/**
+		 * Returns the median.
+		 *
+		 * @return 50th percentile
+		 */
+		public long p50() {
+			return percentile(0.5);
+		}
+
+		/**
+		 * Returns the 99th percentile.
+		 *
+		 * @return 99th percentile
+		 */
+		public long p99() {
+			return percentile(0.99);
+		}
+
+		/**
+		 * Returns the 99.9th percentile.
+		 *
+		 * @return 99.9th percentile
+		 */
+		public long p999() {
+			return percentile(0.999);
+		}
+
+		public String toString() {
+			return "count=" + count() + " mean=" + Math.round(mean()) + " p50=" + p50() + " p99=" + p99() 
+					+ " p999=" + p999() + " max=" + max();
+		}
+
+		private static int bucket(long value) {
+			if (value < SUB){
+				return (int)value;
+			}
+			int exp = 63 - Long.numberOfLeadingZeros(value);
+			int sub = (int)(value >>> (exp - SUB_BITS)) & (SUB - 1);
+			return (exp - SUB_BITS + 1) * SUB + sub;
+		}
+
+		/**
+		 * Returns the largest value that falls in a bucket.
+		 */
+		private static long highest(int bucket) {
+			if (bucket < SUB){
+				return bucket;
+			}
+			int exp = bucket / SUB + SUB_BITS - 1;
+			long low = (long)(SUB + bucket % SUB) << (exp - SUB_BITS);
+			return low + (1L << (exp - SUB_BITS)) - 1;
+		}
+	}
+
+	/**
+	 * JFR event for a document scanned or merged.
+	 */
+	@Name("search.Document")
+	@Label("Document Indexed")
+	@Category("Search Engine")
+	static class DocumentEvent extends Event {
+		@Label("Document")
+		String document;
+
+		@Label("Phase")
+		String phase;
+
+		@Label("Words")
+		int words;
+
+		@Label("Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long time;
+	}
+
+	/**
+	 * JFR event for a search.
+	 */
+	@Name("search.Query")
+	@Label("Search")
+	@Category("Search Engine")
+	static class QueryEvent extends Event {
+		@Label("Kind")
+		String kind;
+
+		@Label("Query")
+		String query;
+
+		@Label("Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long time;
+	}
+
+	private final LittleSearchEngine engine;
+
+	/**
+	 * True if measurements are also emitted as JFR events.
+	 */
+	private final boolean events;
+
+	private final LongAdder documents = new LongAdder();
+	private final LongAdder words = new LongAdder();
+	private final LongAdder indexingNanos = new LongAdder();
+	private final Histogram scanTimes = new Histogram();
+	private final Histogram mergeTimes = new Histogram();
+	private final Histogram[] queryTimes;
+
+	/**
+	 * Initializes the metrics of an engine.
+	 *
+	 * @param engine Engine being measured
+	 * @param events True to emit JFR events as well
+	 */
+	EngineMetrics(LittleSearchEngine engine, boolean events) {
+		this.engine = engine;
+		this.events = events;
+		queryTimes = new Histogram[Query.values().length];
+		for (int i = 0; i < queryTimes.length; i++){
+			queryTimes[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * Returns the number of documents scanned.
+	 *
+	 * @return Number of documents
+	 */
+	public long documents() {
+		return documents.sum();
+	}
+
+	/**
+	 * Returns the number of words scanned, keywords and others.
+	 *
+	 * @return Number of words
+	 */
+	public long words() {
+		return words.sum();
+	}
+
+	/**
+	 * Returns the number of documents scanned per second of makeIndex and addDocument.
+	 *
+	 * @return Documents per second
+	 */
+	public double documentsPerSecond() {
+		long nanos = indexingNanos.sum();
+		return nanos == 0 ? 0 : documents.sum() * 1e9 / nanos;
+	}
+
+	/**
+	 * Returns the number of words scanned per second of makeIndex and addDocument.
+	 *
+	 * @return Words per second
+	 */
+	public double wordsPerSecond() {
+		long nanos = indexingNanos.sum();
+		return nanos == 0 ? 0 : words.sum() * 1e9 / nanos;
+	}
+
+	/**
+	 * Returns the time loadKeyWords took for each document, in nanoseconds.
+	 *
+	 * @return Histogram of scan times
+	 */
+	public Histogram scanTimes() {
+		return scanTimes;
+	}
+
+	/**
+	 * Returns the time mergeKeyWords took for each document, in nanoseconds.
+	 *
+	 * @return Histogram of merge times
+	 */
+	public Histogram mergeTimes() {
+		return mergeTimes;
+	}
+
+	/**
+	 * Returns the latency of a kind of search, in nanoseconds. Searches answered from the query
+	 * cache are included.
+	 *
+	 * @param kind Kind of search
+	 * @return Histogram of latencies
+	 */
+	public Histogram queryTimes(Query kind) {
+		return queryTimes[kind.ordinal()];
+	}
+
+	/**
+	 * Returns the distribution of posting list lengths in the index as it is now. This is
+	 * counted when called, by reading every posting list.
+	 *
+	 * @return Histogram of posting list lengths
+	 */
+	public Histogram postingLengths() {
+		Histogram lengths = new Histogram();
+		IndexReader index = engine.reader();
+		for (String keyword : index.keywords()){
+			lengths.record(index.cursor(keyword).size());
+		}
+		return lengths;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("documents=%d words=%d documents/s=%.0f words/s=%.0f%n", 
+				documents(), words(), documentsPerSecond(), wordsPerSecond()));
+		sb.append("scan ").append(scanTimes).append('\n');
+		sb.append("merge ").append(mergeTimes).append('\n');
+		for (Query kind : Query.values()){
+			if (queryTimes(kind).count() > 0){
+				sb.append(kind).append(' ').append(queryTimes(kind)).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Records a document scanned by loadKeyWords.
+	 */
+	void scanned(String document, int words, long start) {
+		long time = System.nanoTime() - start;
+		documents.increment();
+		this.words.add(words);
+		scanTimes.record(time);
+		if (events){
+			DocumentEvent event = new DocumentEvent();
+			if (event.shouldCommit()){
+				event.document = document;
+				event.phase = "scan";
+				event.words = words;
+				event.time = time;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Records a document merged by mergeKeyWords.
+	 */
+	void merged(String document, long start) {
+		long time = System.nanoTime() - start;
+		mergeTimes.record(time);
+		if (events){
+			DocumentEvent event = new DocumentEvent();
+			if (event.shouldCommit()){
+				event.document = document;
+				event.phase = "merge";
+				event.time = time;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Records the wall clock time of makeIndex or addDocument.
+	 */
+	void indexed(long start) {
+		indexingNanos.add(System.nanoTime() - start);
+	}
+
+	/**
+	 * Records a search.
+	 */
+	void searched(Query kind, long start, String... query) {
+		long time = System.nanoTime() - start;
+		queryTimes[kind.ordinal()].record(time);
+		if (events){
+			QueryEvent event = new QueryEvent();
+			if (event.shouldCommit()){
+				event.kind = kind.name();
+				event.query = String.join(" ", query);
+				event.time = time;
+				event.commit();
+			}
+		}
+	}
+}
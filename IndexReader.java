@@ -0,0 +1,76 @@
+package search;
+
+/**
+ * Read access to a keyword index: the posting list of every keyword, and the names of the
+ * documents the posting lists refer to. Searches are written against this interface, so they
+ * run the same way over an index held in memory and over one opened from a segment file.
+ *
+ */
+interface IndexReader {
+
+	/**
+	 * Returns the whole posting list of a keyword, with the positions of the keyword in each
+	 * document if the index keeps them. Searches that only need frequencies read the list
+	 * through cursor instead, which does not decode entries it is not asked for.
+	 *
+	 * @param keyword Keyword
+	 * @return Posting list in descending order of frequency, null if the keyword is not in the index
+	 */
+	Postings postings(String keyword);
+
+	/**
+	 * Returns a cursor over the posting list of a keyword, in descending order of frequency.
+	 *
+	 * @param keyword Keyword
+	 * @return Cursor before the first entry, null if the keyword is not in the index
+	 */
+	PostingsCursor cursor(String keyword);
+
+	/**
+	 * Returns a cursor over the posting list of a keyword in order of document id.
+	 *
+	 * @param keyword Keyword
+	 * @return Cursor before the first entry, null if the keyword is not in the index
+	 */
+	DocCursor docPostings(String keyword);
+
+	/**
+	 * Returns all keywords in the index.
+	 *
+	 * @return Keywords, in no particular order
+	 */
+	Iterable<String> keywords();
+
+	/**
+	 * Returns the name of a document.
+	 *
+	 * @param doc Document id
+	 * @return Document name, null if the document was deleted from the index
+	 */
+	String documentName(int doc);
+
+	/**
+	 * Returns the length of a document, the total number of keyword occurrences in it.
+	 *
+	 * @param doc Document id
+	 * @return Document length, 0 if the document was deleted from the index
+	 */
+	int documentLength(int doc);
+
+	/**
+	 * Returns the number of words of a document, noise words and other words that are not
+	 * keywords included, so a phrase can be checked against the end of the document.
+	 *
+	 * @param doc Document id
+	 * @return Number of words, 0 if the document was deleted or its words were not counted
+	 */
+	int documentWords(int doc);
+
+	/**
+	 * Returns the number of document ids handed out. Ids run from 0 to this number - 1; the
+	 * ids of deleted documents are not reused.
+	 *
+	 * @return Number of documents
+	 */
+	int documentCount();
+}
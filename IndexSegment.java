@@ -0,0 +1,518 @@
+package search;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * This class is a keyword index saved in a binary segment file. A segment is written once from
+ * an index in memory, and read back by memory-mapping the file, so opening a segment does not
+ * read the posting lists: each one is decoded from the mapped buffer when a search asks for it.
+ *
+ * The file is laid out as follows (all numbers are big-endian ints):
+ * <pre>
+ *   magic, version, number of documents (D), number of keywords (K), flags
+ *   D+1 offsets of document names in the name bytes
+ *   K+1 offsets of keywords in the keyword bytes, keywords sorted by their UTF-8 bytes
+ *   K+1 offsets of posting lists in the posting bytes
+ *   document name bytes (UTF-8)
+ *   keyword bytes (UTF-8)
+ *   posting bytes: for each keyword, the length of its frequency-ordered list as a variable-byte
+ *   int, the list in order of frequency, then the list in order of document id
+ * </pre>
+ * Both forms of a posting list are compressed as described in CompressedPostings: searches that
+ * rank by frequency decode the first without sorting, and searches that walk lists by document
+ * id read the second straight from the mapped file.
+ * If bit 1 of the flags is set, the posting bytes are followed by the length of each document
+ * (D ints), and if bit 2 is set, by the number of words of each document (D ints). If bit 0 of the flags is set, the index keeps positions, and next come
+ * <pre>
+ *   K+1 offsets of each keyword's positions in the position bytes
+ *   position bytes: for each entry of the keyword's posting list, the length of its encoded
+ *   positions as a variable-byte int (0 for none), then the positions as written by PositionList
+ * </pre>
+ * Versions 1 and 2 store each posting list uncompressed, in the posting ints: its document ids
+ * followed by its frequencies; offsets of posting lists count ints rather than bytes. Version 1
+ * files have no flags, and no positions. For files without document lengths, the
+ * lengths are added up from the posting lists the first time they are needed.
+ * A segment file has to be smaller than 2GB.
+ *
+ */
+class IndexSegment implements IndexReader {
+
+	/**
+	 * First int of every segment file.
+	 */
+	static final int MAGIC = 0x4C534531; // "LSE1"
+
+	/**
+	 * Format version written by this class.
+	 */
+	static final int VERSION = 3;
+
+	/**
+	 * Flag bit set if the segment has positions.
+	 */
+	static final int POSITIONS = 1;
+
+	/**
+	 * Flag bit set if the segment has document lengths.
+	 */
+	static final int LENGTHS = 2;
+
+	/**
+	 * Flag bit set if the segment has the number of words of each document.
+	 */
+	static final int WORDS = 4;
+
+	/**
+	 * The mapped file.
+	 */
+	private final ByteBuffer buf;
+
+	/**
+	 * Number of documents and of keywords.
+	 */
+	private final int docCount, termCount;
+
+	/**
+	 * Start of each region of the file.
+	 */
+	private final int docOffsets, termOffsets, postingOffsets, docBytes, termBytes, postingData;
+
+	/**
+	 * True if posting lists are compressed (version 3 on), false if they are stored as ints.
+	 */
+	private final boolean compressed;
+
+	/**
+	 * Start of the position offsets and of the position bytes, -1 if there are no positions.
+	 */
+	private final int positionOffsets, positionBytes;
+
+	/**
+	 * Start of the document lengths, -1 if they are not in the file.
+	 */
+	private final int lengthInts;
+
+	/**
+	 * Start of the document word counts, -1 if they are not in the file.
+	 */
+	private final int wordInts;
+
+	/**
+	 * Document lengths added up from the posting lists, for files without them.
+	 */
+	private volatile int[] lengths;
+
+	private IndexSegment(ByteBuffer buf)
+	throws IOException {
+		this.buf = buf;
+		if (buf.limit() < 16 || buf.getInt(0) != MAGIC){
+			throw new IOException("Not an index segment file");
+		}
+		int version = buf.getInt(4);
+		if (version < 1 || version > VERSION){
+			throw new IOException("Unsupported index segment version " + version);
+		}
+		docCount = buf.getInt(8);
+		termCount = buf.getInt(12);
+		int flags = version == 1 ? 0 : buf.getInt(16);
+		docOffsets = version == 1 ? 16 : 20;
+		termOffsets = docOffsets + 4*(docCount+1);
+		postingOffsets = termOffsets + 4*(termCount+1);
+		docBytes = postingOffsets + 4*(termCount+1);
+		termBytes = docBytes + buf.getInt(docOffsets + 4*docCount);
+		postingData = termBytes + buf.getInt(termOffsets + 4*termCount);
+		compressed = version >= 3;
+		int end = postingData + (compressed ? 1 : 4) * buf.getInt(postingOffsets + 4*termCount);
+		if ((flags & LENGTHS) != 0){
+			lengthInts = end;
+			end += 4*docCount;
+		}
+		else {
+			lengthInts = -1;
+		}
+		if ((flags & WORDS) != 0){
+			wordInts = end;
+			end += 4*docCount;
+		}
+		else {
+			wordInts = -1;
+		}
+		if ((flags & POSITIONS) != 0){
+			positionOffsets = end;
+			positionBytes = positionOffsets + 4*(termCount+1);
+		}
+		else {
+			positionOffsets = -1;
+			positionBytes = -1;
+		}
+	}
+
+	/**
+	 * Opens a segment file by mapping it into memory.
+	 *
+	 * @param file Name of the segment file
+	 * @return Segment that reads from the mapped file
+	 * @throws IOException If the file cannot be read, or is not a segment file
+	 */
+	static IndexSegment open(String file)
+	throws IOException {
+		FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+		try {
+			return new IndexSegment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes an index to a segment file.
+	 *
+	 * @param file Name of the segment file, overwritten if it exists
+	 * @param index Index to be saved
+	 * @throws IOException If the file cannot be written
+	 */
+	static void write(String file, IndexReader index)
+	throws IOException {
+		int docCount = index.documentCount();
+		byte[][] names = new byte[docCount][];
+		for (int i = 0; i < docCount; i++){
+			String name = index.documentName(i);
+			names[i] = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+		}
+		ArrayList<byte[]> terms = new ArrayList<byte[]>();
+		IdentityHashMap<byte[],String> keywords = new IdentityHashMap<byte[],String>();
+		for (String keyword : index.keywords()){
+			byte[] term = keyword.getBytes(StandardCharsets.UTF_8);
+			terms.add(term);
+			keywords.put(term, keyword);
+		}
+		Collections.sort(terms, new Comparator<byte[]>() {
+			public int compare(byte[] a, byte[] b) {
+				return compareBytes(a, b);
+			}
+		});
+		boolean positional = false;
+		ArrayList<byte[]> lists = new ArrayList<byte[]>(terms.size());
+		for (byte[] term : terms){
+			Postings list = CompressedPostings.ordered(index.postings(keywords.get(term)));
+			positional |= list.positions != null;
+			lists.add(encode(list));
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(docCount);
+			out.writeInt(terms.size());
+			out.writeInt(LENGTHS | (positional ? POSITIONS | WORDS : 0));
+			int offset = 0;
+			for (int i = 0; i < docCount; i++){
+				out.writeInt(offset);
+				offset += names[i].length;
+			}
+			out.writeInt(offset);
+			offset = 0;
+			for (byte[] term : terms){
+				out.writeInt(offset);
+				offset += term.length;
+			}
+			out.writeInt(offset);
+			offset = 0;
+			for (byte[] list : lists){
+				out.writeInt(offset);
+				offset += list.length;
+			}
+			out.writeInt(offset);
+			for (byte[] name : names){
+				out.write(name);
+			}
+			for (byte[] term : terms){
+				out.write(term);
+			}
+			for (byte[] list : lists){
+				out.write(list);
+			}
+			for (int i = 0; i < docCount; i++){
+				out.writeInt(index.documentLength(i));
+			}
+			if (positional){
+				for (int i = 0; i < docCount; i++){
+					out.writeInt(index.documentWords(i));
+				}
+				writePositions(out, index, terms, keywords);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Encodes both forms of a posting list, as stored in the posting bytes.
+	 */
+	private static byte[] encode(Postings list) {
+		byte[] byDoc = CompressedPostings.encode(list);
+		int size = CompressedPostings.sizeByFrequency(list);
+		byte[] bytes = new byte[VarInt.size(size) + size + byDoc.length];
+		int at = VarInt.write(bytes, 0, size);
+		at = CompressedPostings.writeByFrequency(list, bytes, at);
+		System.arraycopy(byDoc, 0, bytes, at, byDoc.length);
+		return bytes;
+	}
+
+	/**
+	 * Writes the positions region of a segment file. Entries follow the order of the posting
+	 * lists as written.
+	 */
+	private static void writePositions(DataOutputStream out, IndexReader index, ArrayList<byte[]> terms, 
+			IdentityHashMap<byte[],String> keywords)
+	throws IOException {
+		byte[] length = new byte[5];
+		int offset = 0;
+		for (byte[] term : terms){
+			out.writeInt(offset);
+			Postings list = CompressedPostings.ordered(index.postings(keywords.get(term)));
+			for (int i = 0; i < list.size; i++){
+				int n = positions(list, i).length;
+				offset += VarInt.size(n) + n;
+			}
+		}
+		out.writeInt(offset);
+		for (byte[] term : terms){
+			Postings list = CompressedPostings.ordered(index.postings(keywords.get(term)));
+			for (int i = 0; i < list.size; i++){
+				byte[] encoded = positions(list, i);
+				out.write(length, 0, VarInt.write(length, 0, encoded.length));
+				out.write(encoded);
+			}
+		}
+	}
+
+	private static byte[] positions(Postings list, int i) {
+		if (list.positions == null || list.positions[i] == null){
+			return new byte[0];
+		}
+		return list.positions[i];
+	}
+
+	public Postings postings(String keyword) {
+		int term = find(keyword);
+		if (term < 0){
+			return null;
+		}
+		Postings list = decode(term);
+		if (compressed){
+			// phrase searches look documents up in the list; the file has it in document order
+			int at = postingData + buf.getInt(postingOffsets + 4*term);
+			int length = readVarInt(at);
+			list.sortedByDoc(CompressedPostings.docOrder(list, new CompressedPostings(buf, at + VarInt.size(length) + length)));
+		}
+		int size = list.size;
+		if (positionOffsets != -1){
+			list.positions = new byte[size][];
+			ByteBuffer in = buf.duplicate().position(positionBytes + buf.getInt(positionOffsets + 4*term));
+			for (int i = 0; i < size; i++){
+				int length = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = in.get();
+					length |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+				if (length > 0){
+					list.positions[i] = new byte[length];
+					in.get(list.positions[i]);
+				}
+			}
+		}
+		return list;
+	}
+
+	public PostingsCursor cursor(String keyword) {
+		int term = find(keyword);
+		if (term < 0){
+			return null;
+		}
+		if (!compressed){
+			return decode(term).cursor();
+		}
+		int at = postingData + buf.getInt(postingOffsets + 4*term);
+		int length = readVarInt(at);
+		at += VarInt.size(length);
+		return new CompressedPostings.FrequencyCursor(buf, at, new CompressedPostings(buf, at + length));
+	}
+
+	public DocCursor docPostings(String keyword) {
+		int term = find(keyword);
+		if (term < 0){
+			return null;
+		}
+		if (!compressed){
+			return decode(term).docCursor();
+		}
+		int at = postingData + buf.getInt(postingOffsets + 4*term);
+		int length = readVarInt(at);
+		return new CompressedPostings(buf, at + VarInt.size(length) + length).cursor();
+	}
+
+	/**
+	 * Decodes the whole posting list of a keyword, without positions.
+	 *
+	 * @param term Position of the keyword
+	 * @return Posting list
+	 */
+	private Postings decode(int term) {
+		if (compressed){
+			int at = postingData + buf.getInt(postingOffsets + 4*term);
+			int length = readVarInt(at);
+			at += VarInt.size(length);
+			int size = new CompressedPostings(buf, at + length).size();
+			return CompressedPostings.readByFrequency(buf, at, size);
+		}
+		int start = buf.getInt(postingOffsets + 4*term);
+		int size = (buf.getInt(postingOffsets + 4*(term+1)) - start) / 2;
+		int[] docs = new int[size];
+		int[] freqs = new int[size];
+		IntBuffer ints = buf.duplicate().position(postingData + 4*start).slice().asIntBuffer();
+		ints.get(docs);
+		ints.get(freqs);
+		return new Postings(docs, freqs, size);
+	}
+
+	private int readVarInt(int at) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buf.get(at++);
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	public Iterable<String> keywords() {
+		ArrayList<String> keywords = new ArrayList<String>(termCount);
+		for (int i = 0; i < termCount; i++){
+			keywords.add(term(i));
+		}
+		return keywords;
+	}
+
+	public String documentName(int doc) {
+		int start = buf.getInt(docOffsets + 4*doc);
+		int end = buf.getInt(docOffsets + 4*(doc+1));
+		// deleted documents are saved with an empty name
+		return start == end ? null : string(docBytes + start, end - start);
+	}
+
+	public int documentLength(int doc) {
+		if (lengthInts != -1){
+			return buf.getInt(lengthInts + 4*doc);
+		}
+		int[] sums = lengths;
+		if (sums == null){
+			sums = new int[docCount];
+			for (int term = 0; term < termCount; term++){
+				Postings list = decode(term);
+				for (int i = 0; i < list.size; i++){
+					sums[list.docs[i]] += list.freqs[i];
+				}
+			}
+			lengths = sums;
+		}
+		return sums[doc];
+	}
+
+	public int documentWords(int doc) {
+		return wordInts == -1 ? 0 : buf.getInt(wordInts + 4*doc);
+	}
+
+	public int documentCount() {
+		return docCount;
+	}
+
+	/**
+	 * Returns the keyword at the given position in sorted order.
+	 *
+	 * @param i Position of the keyword
+	 * @return Keyword
+	 */
+	String term(int i) {
+		int start = buf.getInt(termOffsets + 4*i);
+		int end = buf.getInt(termOffsets + 4*(i+1));
+		return string(termBytes + start, end - start);
+	}
+
+	/**
+	 * Finds a keyword in the sorted keywords.
+	 *
+	 * @param keyword Keyword, may be null
+	 * @return Position of the keyword, -1 if it is null or not in this segment
+	 */
+	private int find(String keyword) {
+		return keyword == null ? -1 : find(keyword.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Binary searches the sorted keywords for the given UTF-8 bytes.
+	 *
+	 * @param key UTF-8 bytes of a keyword
+	 * @return Position of the keyword, -1 if it is not in this segment
+	 */
+	private int find(byte[] key) {
+		int left = 0;
+		int right = termCount-1;
+		while (left <= right){
+			int mid = (left+right) >>> 1;
+			int start = termBytes + buf.getInt(termOffsets + 4*mid);
+			int end = termBytes + buf.getInt(termOffsets + 4*(mid+1));
+			int c = compare(start, end, key);
+			if (c == 0){
+				return mid;
+			}
+			else if (c < 0){
+				left = mid + 1;
+			}
+			else {
+				right = mid - 1;
+			}
+		}
+		return -1;
+	}
+
+	private int compare(int start, int end, byte[] key) {
+		int n = Math.min(end - start, key.length);
+		for (int i = 0; i < n; i++){
+			int c = (buf.get(start+i) & 0xff) - (key[i] & 0xff);
+			if (c != 0){
+				return c;
+			}
+		}
+		return (end - start) - key.length;
+	}
+
+	private static int compareBytes(byte[] a, byte[] b) {
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; i++){
+			int c = (a[i] & 0xff) - (b[i] & 0xff);
+			if (c != 0){
+				return c;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	private String string(int start, int length) {
+		byte[] bytes = new byte[length];
+		buf.duplicate().position(start).get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
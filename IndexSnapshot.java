@@ -0,0 +1,61 @@
+package search;
+
+/**
+ * This class is an immutable version of the in-memory index, published for concurrent readers.
+ * It holds its own copy of the keyword hash table and of the document table, and shares the
+ * posting lists with the index it was taken from. Taking the copy starts a new generation of
+ * the index's table, and the writer copies a list from an older generation before changing it,
+ * so a snapshot never changes after it is taken.
+ *
+ */
+class IndexSnapshot implements IndexReader {
+
+	private final KeywordTable keywordsIndex;
+
+	private final DocumentTable documents;
+
+	/**
+	 * Takes a snapshot of an index.
+	 *
+	 * @param keywordsIndex Keyword hash table of the index
+	 * @param documents Document table of the index
+	 */
+	IndexSnapshot(KeywordTable keywordsIndex, DocumentTable documents) {
+		this.keywordsIndex = keywordsIndex.copy();
+		this.documents = documents.copy();
+	}
+
+	public Postings postings(String keyword) {
+		return keywordsIndex.get(keyword);
+	}
+
+	public PostingsCursor cursor(String keyword) {
+		Postings list = keywordsIndex.get(keyword);
+		return list == null ? null : list.cursor();
+	}
+
+	public DocCursor docPostings(String keyword) {
+		Postings list = keywordsIndex.get(keyword);
+		return list == null ? null : list.docCursor();
+	}
+
+	public Iterable<String> keywords() {
+		return keywordsIndex.keywords();
+	}
+
+	public String documentName(int doc) {
+		return documents.name(doc);
+	}
+
+	public int documentLength(int doc) {
+		return documents.length(doc);
+	}
+
+	public int documentWords(int doc) {
+		return documents.words(doc);
+	}
+
+	public int documentCount() {
+		return documents.size();
+	}
+}
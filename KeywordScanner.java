@@ -0,0 +1,316 @@
+package search;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.*;
+
+/**
+ * This class splits the text of a document into words, and turns each word into a keyword
+ * following the same rules as LittleSearchEngine.getKeyWord. Words are collected in a reusable
+ * char buffer, lower-cased and stripped in place, and checked against the noise words without
+ * building a String. A String is only created the first time a keyword is seen in a document;
+ * after that the same String object is handed back for every occurrence of the keyword.
+ *
+ * A scanner is not thread safe - each indexing thread uses its own.
+ *
+ */
+class KeywordScanner {
+
+	/**
+	 * Noise words, looked up by span.
+	 */
+	private final NoiseFilter noiseWords;
+
+	/**
+	 * Keywords this scanner has produced in the current document, so each occurrence of a
+	 * keyword returns the same String. The table is cleared for every document, so the index
+	 * does not keep a String for every keyword through it.
+	 */
+	private final CharTable keywords;
+
+	/**
+	 * True if lower-casing ASCII letters in the default locale simply maps 'A'..'Z' to 'a'..'z'.
+	 */
+	private final boolean asciiLowerCase;
+
+	/**
+	 * Characters decoded from the document, and the range of them not yet scanned.
+	 */
+	private final char[] chunk = new char[8192];
+	private final CharBuffer chunkBuffer = CharBuffer.wrap(chunk);
+	private int chunkPos, chunkEnd;
+
+	/**
+	 * Bytes read from the document and not decoded yet, between position and limit.
+	 */
+	private final ByteBuffer bytes = ByteBuffer.allocate(1 << 16);
+
+	/**
+	 * Decoder for the platform's default charset, the one a FileReader would use. Malformed
+	 * input is replaced the same way.
+	 */
+	private final CharsetDecoder decoder;
+
+	/**
+	 * True if the default charset encodes characters below 0x80 as single identical bytes and
+	 * keeps no state between characters, so runs of such bytes can be copied without the decoder.
+	 */
+	private final boolean asciiBytes;
+
+	/**
+	 * Document being scanned, whether all of it has been read, and whether all of it has
+	 * been decoded.
+	 */
+	private ReadableByteChannel channel;
+	private boolean endOfInput, flushed;
+
+	/**
+	 * Current word, and its length. After keyWord() the keyword is the span keyStart..keyEnd.
+	 */
+	private char[] word = new char[64];
+	private int length;
+	private int keyStart, keyEnd;
+
+	/**
+	 * Number of words read from the document so far.
+	 */
+	private int words;
+
+	/**
+	 * Initializes a scanner that drops the given noise words.
+	 *
+	 * @param noiseWords Noise words
+	 */
+	KeywordScanner(NoiseFilter noiseWords) {
+		this.noiseWords = noiseWords;
+		keywords = new CharTable(1000);
+		asciiLowerCase = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toLowerCase().equals("abcdefghijklmnopqrstuvwxyz");
+		Charset charset = Charset.defaultCharset();
+		decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		asciiBytes = charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+				|| charset.equals(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Starts scanning a document. The document is read in large blocks straight from the
+	 * channel, and decoded into the scanner's char buffer; no line or word Strings are made.
+	 *
+	 * @param channel Bytes of the document
+	 */
+	void open(ReadableByteChannel channel) {
+		this.channel = channel;
+		endOfInput = false;
+		flushed = false;
+		words = 0;
+		keywords.clear();
+		bytes.clear().flip();
+		decoder.reset();
+		chunkPos = 0;
+		chunkEnd = 0;
+	}
+
+	/**
+	 * Reads the next word of the document into the word buffer. Words are separated by the
+	 * same white space characters as in a StringTokenizer: space, tab, newline, carriage return
+	 * and form feed.
+	 *
+	 * @return True if a word was read, false at the end of the document
+	 * @throws IOException If the document could not be read
+	 */
+	boolean nextWord()
+	throws IOException {
+		length = 0;
+		while (true){
+			if (chunkPos == chunkEnd){
+				int n = fill();
+				if (n < 0){
+					if (length > 0){
+						words++;
+						return true;
+					}
+					return false;
+				}
+				chunkPos = 0;
+				chunkEnd = n;
+			}
+			char c = chunk[chunkPos++];
+			if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f'){
+				if (length > 0){
+					words++;
+					return true;
+				}
+			}
+			else {
+				if (length == word.length){
+					char[] bigger = new char[length * 2];
+					System.arraycopy(word, 0, bigger, 0, length);
+					word = bigger;
+				}
+				word[length++] = c;
+			}
+		}
+	}
+
+	/**
+	 * Returns the position of the current word in the document.
+	 *
+	 * @return Word number, starting at 0
+	 */
+	int position() {
+		return words - 1;
+	}
+
+	/**
+	 * Decodes the next characters of the document into the char buffer. Runs of ASCII bytes are
+	 * copied directly; anything else goes through the charset decoder.
+	 *
+	 * @return Number of characters decoded, -1 at the end of the document
+	 * @throws IOException If the document could not be read
+	 */
+	private int fill()
+	throws IOException {
+		while (true){
+			if (bytes.hasRemaining()){
+				if (asciiBytes){
+					byte[] b = bytes.array();
+					int pos = bytes.position();
+					int limit = Math.min(bytes.limit(), pos + chunk.length);
+					int n = 0;
+					while (pos < limit && b[pos] >= 0){
+						chunk[n++] = (char)b[pos++];
+					}
+					bytes.position(pos);
+					if (n > 0){
+						return n;
+					}
+				}
+				chunkBuffer.clear();
+				decoder.decode(bytes, chunkBuffer, endOfInput);
+				if (chunkBuffer.position() > 0){
+					return chunkBuffer.position();
+				}
+			}
+			if (endOfInput){
+				if (flushed){
+					return -1;
+				}
+				chunkBuffer.clear();
+				decoder.decode(bytes, chunkBuffer, true);
+				decoder.flush(chunkBuffer);
+				flushed = true;
+				int n = chunkBuffer.position();
+				return n > 0 ? n : -1;
+			}
+			// the rest of the buffer is an incomplete character, or nothing
+			bytes.compact();
+			if (channel.read(bytes) < 0){
+				endOfInput = true;
+			}
+			bytes.flip();
+		}
+	}
+
+	/**
+	 * Returns the current word as a keyword.
+	 *
+	 * @return Keyword, or null if the current word is not a keyword
+	 */
+	String keyWord() {
+		if (!isKeyWord()){
+			return null;
+		}
+		return keywords.intern(word, keyStart, keyEnd - keyStart);
+	}
+
+	/**
+	 * Returns the given word as a keyword. The keyword is a new String, not one kept in the
+	 * scanner's table: that table is only emptied when a document is opened, and a query word
+	 * must not stay in it for the life of the thread.
+	 *
+	 * @param str Candidate word
+	 * @return Keyword, or null if str is not a keyword
+	 */
+	String keyWord(String str) {
+		length = 0;
+		ensureCapacity(str.length());
+		str.getChars(0, str.length(), word, 0);
+		length = str.length();
+		if (!isKeyWord()){
+			return null;
+		}
+		return new String(word, keyStart, keyEnd - keyStart);
+	}
+
+	/**
+	 * Lower-cases the current word, strips its punctuation, and tells whether the rest is a
+	 * keyword, which is then word[keyStart..keyEnd).
+	 */
+	private boolean isKeyWord() {
+		lowerCase();
+		return strip() && !noiseWords.contains(word, keyStart, keyEnd - keyStart);
+	}
+
+	/**
+	 * Lower-cases the current word in place. ASCII letters are lower-cased without a branch
+	 * per character; only a word with a character outside ASCII then goes through
+	 * String.toLowerCase, which may change its length.
+	 */
+	private void lowerCase() {
+		if (asciiLowerCase){
+			int all = 0;
+			for (int i = 0; i < length; i++){
+				int c = word[i];
+				all |= c;
+				// 0x20 if 'A' <= c <= 'Z': both c-'A' and 'Z'-c are then non-negative
+				word[i] = (char)(c | (~((c - 'A') | ('Z' - c)) >>> 31 << 5));
+			}
+			if (all < 0x80){
+				return;
+			}
+		}
+		String lower = new String(word, 0, length).toLowerCase();
+		ensureCapacity(lower.length());
+		lower.getChars(0, lower.length(), word, 0);
+		length = lower.length();
+	}
+
+	/**
+	 * Applies the keyword rules to the (lower case) current word: an opening quote or bracket
+	 * is dropped from the front, and everything after the first non-letter is dropped provided
+	 * there are no more letters after it.
+	 *
+	 * @return True if the word leaves a non-empty run of letters, false otherwise
+	 */
+	private boolean strip() {
+		int start = 0;
+		if (length > 0){
+			char c = word[0];
+			if (c == '\'' || c == '\"' || c == '(' || c == '[' || c == '{'){
+				start = 1;
+			}
+		}
+		int end = start;
+		while (end < length && Character.isLetter(word[end])){
+			end++;
+		}
+		for (int i = end+1; i < length; i++){
+			if (Character.isLetter(word[i])){
+				return false;
+			}
+		}
+		keyStart = start;
+		keyEnd = end;
+		return end > start;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (word.length < capacity){
+			char[] bigger = new char[Math.max(capacity, word.length * 2)];
+			System.arraycopy(word, 0, bigger, 0, length);
+			word = bigger;
+		}
+	}
+}
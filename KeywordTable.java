@@ -0,0 +1,254 @@
+package search;
+
+import java.util.*;
+
+/**
+ * This class is the keyword hash table of an index in memory: it maps each keyword to its
+ * posting list. Keywords are kept in a TermTable, and posting lists in an array indexed by
+ * keyword id, so the table holds no object per keyword other than the posting list itself.
+ *
+ * A keyword whose list is removed keeps its id, and gets its old id back if it is put in
+ * the table again.
+ *
+ * Taking a copy costs the same however big the table is: the copy shares the pages of the
+ * list array with this table, and the table starts a new generation. Pages, and the posting
+ * lists themselves, are stamped with the generation they were made in; one from an older
+ * generation may be part of a copy, so it is copied before it is changed. A change then
+ * copies the array of pages, the page it touches and the list it touches, not the table.
+ *
+ */
+class KeywordTable {
+
+	/**
+	 * Number of ids in a page of lists, as a power of 2.
+	 */
+	private static final int PAGE_BITS = 10, PAGE = 1 << PAGE_BITS;
+
+	/**
+	 * Keywords, with their ids.
+	 */
+	private final TermTable terms;
+
+	/**
+	 * Posting list of each keyword, in pages of PAGE ids, null if the keyword was removed. A
+	 * null page has no lists.
+	 */
+	private Postings[][] pages;
+
+	/**
+	 * Generation each page was made in, and the generation the array of pages was made in.
+	 */
+	private int[] pageGenerations;
+	private int pagesGeneration;
+
+	/**
+	 * Number of copies taken of this table so far.
+	 */
+	private int generation;
+
+	/**
+	 * Number of keywords with a posting list.
+	 */
+	private int size;
+
+	/**
+	 * Initializes an empty table with room for the given number of keywords before it has to grow.
+	 *
+	 * @param expected Expected number of keywords
+	 */
+	KeywordTable(int expected) {
+		terms = new TermTable(expected);
+		int n = Math.max(1, (expected + PAGE - 1) >>> PAGE_BITS);
+		pages = new Postings[n][];
+		pageGenerations = new int[n];
+	}
+
+	/**
+	 * Initializes a read-only copy of a table.
+	 */
+	private KeywordTable(KeywordTable table) {
+		terms = table.terms.view();
+		pages = table.pages;
+		size = table.size;
+	}
+
+	/**
+	 * Returns a copy of this table that does not change when this table does. The copy shares
+	 * its posting lists, and all keyword characters, with this table.
+	 *
+	 * @return Read-only copy of this table
+	 */
+	KeywordTable copy() {
+		KeywordTable copy = new KeywordTable(this);
+		generation++;
+		return copy;
+	}
+
+	/**
+	 * Returns the generation of this table. A posting list stamped with another generation
+	 * may be part of a copy, and must be copied before it is changed.
+	 *
+	 * @return Number of copies taken of this table
+	 */
+	int generation() {
+		return generation;
+	}
+
+	/**
+	 * Returns the number of keywords.
+	 *
+	 * @return Number of keywords with a posting list
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the posting list of a keyword.
+	 *
+	 * @param keyword Keyword, may be null
+	 * @return Posting list, null if the keyword is null or not in this table
+	 */
+	Postings get(String keyword) {
+		if (keyword == null){
+			return null;
+		}
+		int id = terms.find(keyword);
+		return id == -1 ? null : get(id);
+	}
+
+	/**
+	 * Returns the posting list of a keyword id.
+	 *
+	 * @param id Keyword id
+	 * @return Posting list, null if the keyword was removed
+	 */
+	Postings get(int id) {
+		Postings[] page = pages[id >>> PAGE_BITS];
+		return page == null ? null : page[id & (PAGE-1)];
+	}
+
+	/**
+	 * Returns the id of a keyword, giving the keyword an id if it does not have one yet.
+	 *
+	 * @param keyword Keyword
+	 * @return Keyword id
+	 */
+	int id(String keyword) {
+		int id = terms.add(keyword);
+		if (id >>> PAGE_BITS == pages.length){
+			writablePages();
+			pages = Arrays.copyOf(pages, pages.length * 2);
+			pageGenerations = Arrays.copyOf(pageGenerations, pages.length);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns a keyword.
+	 *
+	 * @param id Keyword id
+	 * @return Keyword
+	 */
+	String keyword(int id) {
+		return terms.term(id);
+	}
+
+	/**
+	 * Sets the posting list of a keyword. The list is stamped with the generation of this
+	 * table, so it can be changed in place until the next copy is taken.
+	 *
+	 * @param id Keyword id
+	 * @param list Posting list, null to remove the keyword
+	 */
+	void put(int id, Postings list) {
+		Postings old = get(id);
+		if (old == null && list == null){
+			return;
+		}
+		if (old == null){
+			size++;
+		}
+		else if (list == null){
+			size--;
+		}
+		if (list != null){
+			list.generation = generation;
+		}
+		int p = id >>> PAGE_BITS;
+		writablePages();
+		if (pages[p] == null){
+			pages[p] = new Postings[PAGE];
+			pageGenerations[p] = generation;
+		}
+		else if (pageGenerations[p] != generation){
+			pages[p] = pages[p].clone();
+			pageGenerations[p] = generation;
+		}
+		pages[p][id & (PAGE-1)] = list;
+	}
+
+	/**
+	 * Copies the array of pages if it may be shared with a copy of this table.
+	 */
+	private void writablePages() {
+		if (pagesGeneration != generation){
+			pages = pages.clone();
+			pageGenerations = pageGenerations.clone();
+			pagesGeneration = generation;
+		}
+	}
+
+	/**
+	 * Returns the ids of all keywords with a posting list, in order of id.
+	 *
+	 * @return Keyword ids
+	 */
+	int[] ids() {
+		int[] ids = new int[size];
+		int n = 0;
+		for (int id = 0; id < terms.size(); id++){
+			if (get(id) != null){
+				ids[n++] = id;
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns all keywords with a posting list. Each keyword String is created as the
+	 * iteration reaches it.
+	 *
+	 * @return Keywords
+	 */
+	Iterable<String> keywords() {
+		return new Iterable<String>() {
+			public Iterator<String> iterator() {
+				return new Iterator<String>() {
+					private int next = skip(0);
+					public boolean hasNext() {
+						return next < terms.size();
+					}
+					public String next() {
+						if (!hasNext()){
+							throw new NoSuchElementException();
+						}
+						String keyword = terms.term(next);
+						next = skip(next+1);
+						return keyword;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Returns the first id, from a given one on, that has a posting list.
+	 */
+	private int skip(int id) {
+		while (id < terms.size() && get(id) == null){
+			id++;
+		}
+		return id;
+	}
+}
@@ -0,0 +1,134 @@
+package search;
+
+import java.util.*;
+
+/**
+ * This class finds the keywords of a TermDictionary that are within a small edit distance of a
+ * word: the number of characters that have to be inserted, deleted or replaced to turn one into
+ * the other. 
+ * 
+ * The automaton is run, rather than compiled: its state after reading the first j characters of a
+ * keyword is row j of the edit distance table between the word and the keyword. Keywords are read
+ * in sorted order, and each keyword starts from the row where it stops sharing characters with the
+ * keyword before it, so a common prefix is only read once. As soon as every entry of a row is
+ * above the maximum distance, no keyword with that prefix can match, and the whole range of
+ * keywords with the prefix is skipped.
+ *
+ */
+class LevenshteinAutomaton {
+
+	/**
+	 * Largest edit distance allowed.
+	 */
+	static final int MAX_DISTANCE = 2;
+
+	/**
+	 * Word the keywords are compared with.
+	 */
+	private final String word;
+
+	/**
+	 * Largest edit distance of a match.
+	 */
+	private final int distance;
+
+	/**
+	 * State after each prefix of the current keyword: rows[j][i] is the edit distance between the
+	 * first i characters of the word and the first j characters of the keyword.
+	 */
+	private int[][] rows;
+
+	/**
+	 * Initializes an automaton that accepts the keywords within an edit distance of a word.
+	 *
+	 * @param word Word
+	 * @param distance Largest edit distance, from 0 to MAX_DISTANCE
+	 * @throws IllegalArgumentException If distance is out of range
+	 */
+	LevenshteinAutomaton(String word, int distance) {
+		if (distance < 0 || distance > MAX_DISTANCE){
+			throw new IllegalArgumentException("Edit distance must be between 0 and " + MAX_DISTANCE + ": " + distance);
+		}
+		this.word = word;
+		this.distance = distance;
+		rows = new int[word.length() + distance + 1][];
+		rows[0] = new int[word.length() + 1];
+		for (int i = 0; i <= word.length(); i++){
+			rows[0][i] = i;
+		}
+	}
+
+	/**
+	 * Returns the keywords of a dictionary accepted by this automaton.
+	 *
+	 * @param dictionary Sorted keywords
+	 * @return Matching keywords, closest first, and in sorted order for the same distance
+	 */
+	String[] terms(TermDictionary dictionary) {
+		ArrayList<ArrayList<String>> byDistance = new ArrayList<ArrayList<String>>();
+		for (int d = 0; d <= distance; d++){
+			byDistance.add(new ArrayList<String>());
+		}
+		TermDictionary.Cursor c = dictionary.cursor(0);
+		// number of rows past rows[0] that hold the state for a prefix of the current keyword
+		int valid = 0;
+		while (c.next()){
+			int depth = Math.min(valid, c.shared);
+			boolean dead = false;
+			while (depth < c.length){
+				if (!step(depth, c.term[depth])){
+					dead = true;
+				}
+				depth++;
+				if (dead){
+					break;
+				}
+			}
+			valid = depth;
+			if (dead){
+				// no keyword that starts with the first depth characters of this one can match
+				int end = dictionary.prefixRange(new String(c.term, 0, depth))[1];
+				if (end > c.position() + 1){
+					c = dictionary.cursor(end);
+					valid = 0;
+				}
+			}
+			else {
+				int d = rows[depth][word.length()];
+				if (d <= distance){
+					byDistance.get(d).add(c.term());
+				}
+			}
+		}
+		ArrayList<String> terms = new ArrayList<String>();
+		for (ArrayList<String> list : byDistance){
+			terms.addAll(list);
+		}
+		return terms.toArray(new String[terms.size()]);
+	}
+
+	/**
+	 * Computes row j+1 from row j by reading one character of the keyword.
+	 *
+	 * @return False if every entry of the new row is above the maximum distance
+	 */
+	private boolean step(int j, char ch) {
+		if (j+1 == rows.length){
+			rows = Arrays.copyOf(rows, rows.length * 2);
+		}
+		int[] row = rows[j];
+		int[] next = rows[j+1];
+		if (next == null){
+			next = new int[word.length() + 1];
+			rows[j+1] = next;
+		}
+		next[0] = j+1;
+		int min = next[0];
+		for (int i = 1; i <= word.length(); i++){
+			int cost = row[i-1] + (word.charAt(i-1) == ch ? 0 : 1);
+			next[i] = Math.min(cost, Math.min(row[i], next[i-1]) + 1);
+			min = Math.min(min, next[i]);
+		}
+		return min <= distance;
+	}
+}
@@ -1,79 +1,548 @@
 package search;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
- * This class encapsulates an occurrence of a keyword in a document. It stores the
- * document name, and the frequency of occurrence in that document. Occurrences are
- * associated with keywords in an index hash table.
- * 
- * @author Sesh Venugopal
- * 
+ * This class builds an index of keywords. Each keyword maps to a set of documents in
+ * which it occurs, with frequency of occurrence in each document. Once the index is built,
+ * the documents can searched on for keywords.
+ *
  */
-class Occurrence {
+public class LittleSearchEngine {
+	
 	/**
-	 * Document in which a keyword occurs.
+	 * Ways to rank the documents of a search.
 	 */
-	String document;
+	public enum Scoring {
+		/**
+		 * Sum of the keywords' frequencies, as in top5search.
+		 */
+		FREQUENCY,
+		/**
+		 * tf-idf, with log-scaled frequencies and documents normalized by the square root of their length.
+		 */
+		TF_IDF,
+		/**
+		 * Okapi BM25, with k1 = 1.2 and b = 0.75.
+		 */
+		BM25
+	}
 	
 	/**
-	 * The frequency (number of times) the keyword occurs in the above document.
+	 * This is a hash table of all keywords. The key is the actual keyword, and the associated value is
+	 * the posting list of the keyword: ids of the documents it occurs in, with frequencies. The posting
+	 * list is maintained in descending order of occurrence frequencies. Keywords are stored as
+	 * characters in a shared arena, and identified by int ids.
 	 */
-	int frequency;
+	KeywordTable keywordsIndex;
 	
 	/**
-	 * Initializes this occurrence with the given document,frequency pair.
-	 * 
-	 * @param doc Document name
-	 * @param freq Frequency
+	 * Names of all indexed documents, by the ids used in keywordsIndex.
 	 */
-	public Occurrence(String doc, int freq) {
-		document = doc;
-		frequency = freq;
-	}
+	DocumentTable documents;
 	
-	/* (non-Javadoc)
-	 * @see java.lang.Object#toString()
+	/**
+	 * Segment file this index was opened from, null if the index was built in memory. While
+	 * it is set, keywordsIndex and documents are empty and all searches read the segment.
 	 */
-	public String toString() {
-		return "(" + document + "," + frequency + ")";
-	}
-}
-
-/**
- * This class builds an index of keywords. Each keyword maps to a set of documents in
- * which it occurs, with frequency of occurrence in each document. Once the index is built,
- * the documents can searched on for keywords.
- *
- */
-public class LittleSearchEngine {
+	private IndexSegment segment;
 	
 	/**
-	 * This is a hash table of all keywords. The key is the actual keyword, and the associated value is
-	 * an array list of all occurrences of the keyword in documents. The array list is maintained in descending
-	 * order of occurrence frequencies.
+	 * Segment files the index is kept in, null unless segments are enabled. While it is set,
+	 * keywordsIndex and documents only hold the documents not yet flushed to a segment.
+	 */
+	private SegmentedIndex segments;
+	
+	/**
+	 * Latest published snapshot of the index, null unless concurrent reads are enabled. While
+	 * it is set, searches read this snapshot and never the index being changed.
+	 */
+	private volatile IndexReader published;
+	
+	/**
+	 * With concurrent reads, number of documents makeIndex merges between publishing
+	 * snapshots, and number of changes not yet published.
+	 */
+	private int publishEvery, unpublished;
+	
+	/**
+	 * True while makeIndex is merging documents.
+	 */
+	private boolean building;
+	
+	/**
+	 * Posting lists that makeIndex appended to out of order, to be sorted when it is done.
+	 */
+	private final ArrayList<Postings> unsortedLists = new ArrayList<Postings>();
+	
+	/**
+	 * True if loadKeyWords records the position of every keyword occurrence, for phrase
+	 * and proximity searches.
+	 */
+	private volatile boolean keepPositions;
+	
+	/**
+	 * Document length norms for ranked searches, computed for the index that searches last
+	 * read. Dropped whenever the index changes.
+	 */
+	private volatile RankedSearch.Norms norms;
+	
+	/**
+	 * Indexing and search measurements, null while metrics are off.
+	 */
+	private volatile EngineMetrics metrics;
+	
+	/**
+	 * Sorted dictionary of the keywords of the index that searches last read. Dropped whenever
+	 * the index changes.
+	 */
+	private volatile TermDictionary dictionary;
+	
+	/**
+	 * Cache of search results, null if results are not cached.
 	 */
-	HashMap<String,ArrayList<Occurrence>> keywordsIndex;
+	private volatile QueryCache cache;
+	
+	/**
+	 * Reader over keywordsIndex and documents.
+	 */
+	private final IndexReader memory = new IndexReader() {
+		public Postings postings(String keyword) {
+			return keywordsIndex.get(keyword);
+		}
+		public PostingsCursor cursor(String keyword) {
+			Postings list = keywordsIndex.get(keyword);
+			return list == null ? null : list.cursor();
+		}
+		public DocCursor docPostings(String keyword) {
+			Postings list = keywordsIndex.get(keyword);
+			return list == null ? null : list.docCursor();
+		}
+		public Iterable<String> keywords() {
+			return keywordsIndex.keywords();
+		}
+		public String documentName(int doc) {
+			return documents.name(doc);
+		}
+		public int documentLength(int doc) {
+			return documents.length(doc);
+		}
+		public int documentWords(int doc) {
+			return documents.words(doc);
+		}
+		public int documentCount() {
+			return documents.size();
+		}
+	};
 	
 	/**
 	 * The hash table of all noise words - mapping is from word to itself.
 	 */
 	HashMap<String,String> noiseWords;
 	
+	/**
+	 * The noise words again, in a perfect hash table that can be probed with a span of
+	 * characters. It is rebuilt whenever makeIndex loads the noise words.
+	 */
+	private NoiseFilter noiseTable;
+	
+	/**
+	 * Keyword scanner of each thread that extracts keywords for this engine.
+	 */
+	private ThreadLocal<KeywordScanner> scanners;
+	
 	/**
 	 * Creates the keyWordsIndex and noiseWords hash tables.
 	 */
 	public LittleSearchEngine() {
-		keywordsIndex = new HashMap<String,ArrayList<Occurrence>>(1000,2.0f);
+		keywordsIndex = new KeywordTable(1000);
+		documents = new DocumentTable();
 		noiseWords = new HashMap<String,String>(100,2.0f);
+		loadNoiseTable();
+	}
+	
+	/**
+	 * Opens an index saved by saveIndex. The segment file is memory-mapped, and posting lists
+	 * are read from it as searches need them, so no document is scanned again. Noise words are
+	 * not saved with the index; they are only needed to build it.
+	 * 
+	 * @param indexFile Name of the segment file
+	 * @return Search engine over the saved index
+	 * @throws IOException If the file cannot be read, or is not a segment file
+	 */
+	public static LittleSearchEngine openIndex(String indexFile) 
+	throws IOException {
+		LittleSearchEngine engine = new LittleSearchEngine();
+		engine.segment = IndexSegment.open(indexFile);
+		return engine;
+	}
+	
+	/**
+	 * Saves the index, keywords with their posting lists and the document names, to a binary
+	 * segment file that can be opened later with openIndex.
+	 * 
+	 * @param indexFile Name of the segment file, overwritten if it exists
+	 * @throws IOException If the file cannot be written
+	 */
+	public void saveIndex(String indexFile) 
+	throws IOException {
+		IndexSegment.write(indexFile, reader());
+	}
+	
+	/**
+	 * Returns the index that searches read from: the segment file if the index was opened from
+	 * one, keywordsIndex otherwise.
+	 * 
+	 * @return Current index
+	 */
+	IndexReader reader() {
+		IndexReader snapshot = published;
+		if (snapshot != null){
+			return snapshot;
+		}
+		return segment != null ? segment : memory;
+	}
+	
+	/**
+	 * Lets searches run while the index is being changed. Searches then read an immutable
+	 * snapshot of the index, and are never blocked by, or see part of, a change in progress.
+	 * Each change through mergeKeyWords, addDocument, updateDocument or deleteDocument is
+	 * published as a new snapshot when it is done; makeIndex publishes a snapshot every
+	 * publishEvery documents, and when it finishes. Changes themselves are made one at a time.
+	 * 
+	 * @param publishEvery Number of documents makeIndex merges between snapshots
+	 */
+	public synchronized void enableConcurrentReads(int publishEvery) {
+		if (publishEvery < 1){
+			throw new IllegalArgumentException("publishEvery must be at least 1: " + publishEvery);
+		}
+		this.publishEvery = publishEvery;
+		publish();
+	}
+	
+	/**
+	 * Keeps the index in immutable segment files in a directory, instead of one index in
+	 * memory. Documents are indexed in memory as before, and written to a new segment every
+	 * flushEvery documents; deleted documents are only marked deleted in their segments.
+	 * Segments are merged on a background thread, mergeFactor segments of about the same size
+	 * at a time, so adding documents never waits for more than a flush. Searches read all
+	 * segments, and the documents in memory, from a snapshot as with enableConcurrentReads, and
+	 * get the same results as from a single index.
+	 * 
+	 * If the directory holds the segments of an earlier run, listed in its manifest, they are
+	 * opened again, and make up the start of the index. The documents already in this engine
+	 * are written to a segment after them, and replace documents of the same name.
+	 * 
+	 * @param directory Directory for the segment files, created if it does not exist
+	 * @param flushEvery Number of documents indexed in memory before they are written to a segment
+	 * @param mergeFactor Number of segments merged together
+	 * @throws IOException If the directory cannot be created, its segments cannot be opened, or
+	 *         the documents of this engine cannot be written
+	 */
+	public synchronized void enableSegments(String directory, int flushEvery, int mergeFactor) 
+	throws IOException {
+		if (flushEvery < 1){
+			throw new IllegalArgumentException("flushEvery must be at least 1: " + flushEvery);
+		}
+		if (mergeFactor < 2){
+			throw new IllegalArgumentException("mergeFactor must be at least 2: " + mergeFactor);
+		}
+		if (segments != null){
+			throw new IllegalStateException("Segments are already enabled");
+		}
+		File dir = new File(directory);
+		if (!dir.isDirectory() && !dir.mkdirs()){
+			throw new IOException("Cannot create directory " + directory);
+		}
+		SegmentedIndex s = new SegmentedIndex(this, dir, flushEvery, mergeFactor);
+		IndexReader current = reader();
+		for (int doc = 0; doc < current.documentCount(); doc++){
+			String name = current.documentName(doc);
+			if (name != null){
+				s.delete(name);
+			}
+		}
+		s.flush(current);
+		segments = s;
+		segment = null;
+		keywordsIndex = new KeywordTable(1000);
+		documents = new DocumentTable();
+		if (publishEvery == 0){
+			publishEvery = flushEvery;
+		}
+		publish();
+	}
+	
+	/**
+	 * Waits until the segments being merged in the background, and any merges that follow
+	 * from them, are done.
+	 * 
+	 * @throws IOException If a merge failed to write its segment
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 */
+	public synchronized void awaitMerges() 
+	throws IOException, InterruptedException {
+		if (segments != null){
+			segments.awaitMerges();
+		}
+	}
+	
+	/**
+	 * Writes the documents indexed in memory to a segment, waits for the merges in progress,
+	 * records the segments in the manifest of their directory, and stops the merge thread. The
+	 * engine is left empty, and enableSegments on the same directory opens the index again.
+	 * 
+	 * @throws IOException If a segment or the manifest cannot be written, or a segment file no
+	 *         longer in use cannot be deleted
+	 * @throws InterruptedException If the calling thread is interrupted while waiting for merges
+	 */
+	public synchronized void closeSegments() 
+	throws IOException, InterruptedException {
+		if (segments == null){
+			return;
+		}
+		flush();
+		try {
+			segments.close();
+		}
+		finally {
+			segments = null;
+			if (published != null){
+				publish();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of segment files the index is kept in.
+	 * 
+	 * @return Number of segments, 0 unless segments are enabled
+	 */
+	public synchronized int segmentCount() {
+		return segments == null ? 0 : segments.size();
+	}
+	
+	/**
+	 * Publishes the index after a background merge replaced some of its segments.
+	 */
+	synchronized void segmentsChanged() {
+		publish();
+	}
+	
+	/**
+	 * Writes the documents indexed in memory to a new segment, and empties keywordsIndex and
+	 * documents.
+	 */
+	private void flush() {
+		sortPending(null, 1);
+		try {
+			segments.flush(memory);
+		}
+		catch (IOException e){
+			throw new UncheckedIOException("Cannot write segment", e);
+		}
+		keywordsIndex = new KeywordTable(1000);
+		documents = new DocumentTable();
+	}
+	
+	/**
+	 * Publishes the current state of the index as the snapshot searches read.
+	 */
+	private void publish() {
+		sortPending(null, 1);
+		if (segments != null){
+			published = segments.reader(new IndexSnapshot(keywordsIndex, documents));
+		}
+		else {
+			published = segment != null ? segment : new IndexSnapshot(keywordsIndex, documents);
+		}
+		unpublished = 0;
+		norms = null;
+		dictionary = null;
+		QueryCache c = cache;
+		if (c != null){
+			c.clear();
+		}
+	}
+	
+	/**
+	 * Returns the posting list of a keyword for changing it. A list that is part of a published
+	 * snapshot is first replaced with a copy.
+	 * 
+	 * @param keyword Keyword id in keywordsIndex
+	 * @return Posting list, null if the keyword has none
+	 */
+	private Postings writable(int keyword) {
+		Postings list = keywordsIndex.get(keyword);
+		if (list != null && list.generation != keywordsIndex.generation()){
+			list = list.copy();
+			keywordsIndex.put(keyword, list);
+		}
+		return list;
+	}
+	
+	/**
+	 * Moves an index opened from a segment file into keywordsIndex, so it can be changed.
+	 */
+	private void loadSegment() {
+		if (segment == null){
+			return;
+		}
+		for (int i = 0; i < segment.documentCount(); i++){
+			String name = segment.documentName(i);
+			if (name != null){
+				documents.setWords(documents.id(name), segment.documentWords(i));
+			}
+			else {
+				// keep the id of a deleted document taken
+				documents.remove(documents.id(""));
+			}
+		}
+		for (String keyword : segment.keywords()){
+			Postings list = segment.postings(keyword);
+			int id = keywordsIndex.id(keyword);
+			keywordsIndex.put(id, list);
+			for (int i = 0; i < list.size; i++){
+				documents.addKeyword(list.docs[i], id, list.freqs[i]);
+			}
+		}
+		segment = null;
+	}
+	
+	/**
+	 * Makes the index keep the positions of keywords in documents, so phraseSearch and
+	 * nearSearch can be answered from the index. Only documents indexed after this call have
+	 * positions. Positions are stored as variable-byte encoded gaps, one byte per occurrence
+	 * for most keywords.
+	 */
+	public void enablePositions() {
+		keepPositions = true;
+	}
+	
+	/**
+	 * Turns on caching of search results. Results are evicted in least recently used order
+	 * once more than maxQueries queries are cached. The cache is cleared whenever the index
+	 * changes.
+	 * 
+	 * @param maxQueries Maximum number of queries to cache
+	 */
+	public void enableQueryCache(int maxQueries) {
+		enableQueryCache(maxQueries, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Turns on caching of search results. Results are evicted in least recently used order
+	 * once more than maxQueries queries, or more than maxDocuments document names over all
+	 * results, are cached. The cache is cleared whenever the index changes.
+	 * 
+	 * @param maxQueries Maximum number of queries to cache
+	 * @param maxDocuments Maximum total number of document names to cache
+	 */
+	public void enableQueryCache(int maxQueries, int maxDocuments) {
+		cache = new QueryCache(maxQueries, maxDocuments);
+	}
+	
+	/**
+	 * Turns off caching of search results, and drops the cached results.
+	 */
+	public void disableQueryCache() {
+		cache = null;
+	}
+	
+	/**
+	 * Returns the number of searches answered from the result cache.
+	 * 
+	 * @return Number of cache hits, 0 if the cache is off
+	 */
+	public long cacheHits() {
+		QueryCache c = cache;
+		return c == null ? 0 : c.hits();
+	}
+	
+	/**
+	 * Returns the number of searches that were not in the result cache.
+	 * 
+	 * @return Number of cache misses, 0 if the cache is off
+	 */
+	public long cacheMisses() {
+		QueryCache c = cache;
+		return c == null ? 0 : c.misses();
+	}
+	
+	/**
+	 * Turns on metrics: the time taken to scan and merge every document, documents and words
+	 * scanned per second, and the latency of every search. While metrics are off, which is the
+	 * default, nothing is timed. If metrics are already on, they are kept as they are.
+	 * 
+	 * @param jfrEvents True to also emit every measurement as a JFR event
+	 * @return Metrics of this engine
+	 */
+	public synchronized EngineMetrics enableMetrics(boolean jfrEvents) {
+		if (metrics == null){
+			metrics = new EngineMetrics(this, jfrEvents);
+		}
+		return metrics;
+	}
+	
+	/**
+	 * Turns off metrics, and drops the measurements made so far.
+	 */
+	public synchronized void disableMetrics() {
+		metrics = null;
+	}
+	
+	/**
+	 * Returns the metrics of this engine.
+	 * 
+	 * @return Metrics, null if they are off
+	 */
+	public EngineMetrics metrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Publishes a change to the index for concurrent readers, or drops cached search results
+	 * right away if searches read the index directly.
+	 */
+	private void indexChanged() {
+		if (published != null){
+			unpublished++;
+			if (!building || unpublished >= publishEvery){
+				publish();
+			}
+			return;
+		}
+		norms = null;
+		dictionary = null;
+		QueryCache c = cache;
+		if (c != null){
+			c.clear();
+		}
+	}
+	
+	/**
+	 * Builds the noise filter used by keyword scanners from the noiseWords hash table, and
+	 * discards the scanners built against the old filter.
+	 */
+	private void loadNoiseTable() {
+		final NoiseFilter table = new NoiseFilter(noiseWords.keySet());
+		noiseTable = table;
+		scanners = new ThreadLocal<KeywordScanner>() {
+			protected KeywordScanner initialValue() {
+				return new KeywordScanner(table);
+			}
+		};
 	}
 	
 	/**
 	 * This method indexes all keywords found in all the input documents. When this
 	 * method is done, the keywordsIndex hash table will be filled with all keywords,
-	 * each of which is associated with an array list of Occurrence objects, arranged
-	 * in decreasing frequencies of occurrence.
+	 * each of which is associated with a posting list, arranged in decreasing frequencies
+	 * of occurrence. A document listed more than once in docsFile is indexed once, at its
+	 * first place in the list; the later listings are skipped.
 	 * 
 	 * @param docsFile Name of file that has a list of all the document file names, one name per line
 	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
@@ -81,18 +550,180 @@ public class LittleSearchEngine {
 	 */
 	public void makeIndex(String docsFile, String noiseWordsFile) 
 	throws FileNotFoundException {
-		// load noise words to hash table
+		makeIndex(docsFile, noiseWordsFile, 1);
+	}
+	
+	/**
+	 * Same as makeIndex(docsFile, noiseWordsFile), but documents are scanned by a pool of
+	 * worker threads. Each worker runs loadKeyWords on its own document; the resulting
+	 * hash tables are merged into keywordsIndex one at a time, in the order the documents
+	 * appear in docsFile, so the index is identical to the one built by a single thread.
+	 * 
+	 * @param docsFile Name of file that has a list of all the document file names, one name per line
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @param threads Number of worker threads, 1 scans all documents on the calling thread
+	 * @throws FileNotFoundException If there is a problem locating any of the input files on disk
+	 */
+	public synchronized void makeIndex(String docsFile, String noiseWordsFile, int threads) 
+	throws FileNotFoundException {
+		if (threads < 1){
+			throw new IllegalArgumentException("threads must be at least 1: " + threads);
+		}
+		EngineMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		building = true;
+		try {
+			buildIndex(docsFile, noiseWordsFile, threads);
+		}
+		finally {
+			if (m != null){
+				m.indexed(start);
+			}
+			sortPending(null, 1);
+			building = false;
+			if (published != null && unpublished > 0){
+				publish();
+			}
+		}
+	}
+	
+	private void buildIndex(String docsFile, String noiseWordsFile, int threads) 
+	throws FileNotFoundException {
+		loadNoiseWords(noiseWordsFile);
+		// index all keywords
+		Scanner sc = new Scanner(new File(docsFile));
+		// documents listed before, which would otherwise be merged into their lists twice
+		HashSet<String> listed = new HashSet<String>();
+		if (threads == 1){
+			while (sc.hasNext()) {
+				String docFile = sc.next();
+				if (!listed.add(docFile)){
+					continue;
+				}
+				HashMap<String,Occurrence> kws = loadKeyWords(docFile);
+				mergeKeyWords(kws);
+			}
+			sortPending(null, 1);
+			return;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			// at most this many documents are scanned ahead of the merge
+			int window = threads * 4;
+			ArrayDeque<Future<HashMap<String,Occurrence>>> pending = 
+					new ArrayDeque<Future<HashMap<String,Occurrence>>>(window);
+			while (sc.hasNext()) {
+				final String docFile = sc.next();
+				if (!listed.add(docFile)){
+					continue;
+				}
+				pending.add(pool.submit(new Callable<HashMap<String,Occurrence>>() {
+					public HashMap<String,Occurrence> call() throws FileNotFoundException {
+						return loadKeyWords(docFile);
+					}
+				}));
+				if (pending.size() == window){
+					mergeKeyWords(await(pending.remove()));
+				}
+			}
+			while (!pending.isEmpty()){
+				mergeKeyWords(await(pending.remove()));
+			}
+			sortPending(pool, threads);
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Loads noise words into the noiseWords hash table, without indexing any documents. Used by
+	 * the shards of a ShardedEngine, which get their documents one at a time.
+	 * 
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @throws FileNotFoundException If the noise words file is not found on disk
+	 */
+	synchronized void loadNoiseWords(String noiseWordsFile) 
+	throws FileNotFoundException {
 		Scanner sc = new Scanner(new File(noiseWordsFile));
 		while (sc.hasNext()) {
 			String word = sc.next();
 			noiseWords.put(word,word);
 		}
-		// index all keywords
-		sc = new Scanner(new File(docsFile));
-		while (sc.hasNext()) {
-			String docFile = sc.next();
-			HashMap<String,Occurrence> kws = loadKeyWords(docFile);
-			mergeKeyWords(kws);
+		loadNoiseTable();
+	}
+	
+	/**
+	 * Sorts the posting lists makeIndex appended to out of order. The lists are split evenly
+	 * among the threads of the pool, if there is one.
+	 * 
+	 * @param pool Worker threads, null to sort all lists on the calling thread
+	 * @param threads Number of worker threads in the pool
+	 */
+	private void sortPending(ExecutorService pool, int threads) {
+		int n = unsortedLists.size();
+		if (n == 0){
+			return;
+		}
+		if (pool == null || threads == 1 || n == 1){
+			for (Postings list : unsortedLists){
+				list.sort();
+			}
+			unsortedLists.clear();
+			return;
+		}
+		int parts = Math.min(n, threads);
+		ArrayList<Future<?>> sorts = new ArrayList<Future<?>>(parts);
+		for (int p = 0; p < parts; p++){
+			final List<Postings> part = unsortedLists.subList(n * p / parts, n * (p+1) / parts);
+			sorts.add(pool.submit(new Runnable() {
+				public void run() {
+					for (Postings list : part){
+						list.sort();
+					}
+				}
+			}));
+		}
+		try {
+			for (Future<?> sort : sorts){
+				sort.get();
+			}
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while indexing", e);
+		}
+		catch (ExecutionException e){
+			throw new IllegalStateException("Failed to sort posting lists", e.getCause());
+		}
+		unsortedLists.clear();
+	}
+	
+	/**
+	 * Waits for a document scan submitted by makeIndex, and hands back its keywords.
+	 * 
+	 * @param scan Pending result of loadKeyWords
+	 * @return Hash table of keywords of the scanned document
+	 * @throws FileNotFoundException If the scanned document was not found on disk
+	 */
+	private static HashMap<String,Occurrence> await(Future<HashMap<String,Occurrence>> scan) 
+	throws FileNotFoundException {
+		try {
+			return scan.get();
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while indexing", e);
+		}
+		catch (ExecutionException e){
+			Throwable cause = e.getCause();
+			if (cause instanceof FileNotFoundException){
+				throw (FileNotFoundException)cause;
+			}
+			if (cause instanceof RuntimeException){
+				throw (RuntimeException)cause;
+			}
+			throw new IllegalStateException(cause);
 		}
 	}
 
@@ -108,35 +739,55 @@ public class LittleSearchEngine {
 	throws FileNotFoundException {
 		HashMap<String,Occurrence> hash = new HashMap<String,Occurrence>(1000, 2.0f);
 		docFile = docFile.trim();
-		BufferedReader br = new BufferedReader(new FileReader(docFile));
-		String line = null;
+		FileChannel channel = new FileInputStream(docFile).getChannel();
+		KeywordScanner scanner = scanners.get();
+		boolean positional = keepPositions;
+		EngineMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
 		Occurrence o;
 		try{
-			while ((line = br.readLine()) != null){
-				StringTokenizer st = new StringTokenizer(line);
-				while (st.hasMoreTokens()){
-					String word = st.nextToken();
-					String key = getKeyWord(word);
-					if (key == null){
-						continue;
-					}
-					o = hash.get(key);
-					if (o != null){
-						o.frequency++;
-						hash.put(key, o);
-					}
-					else {
-						o = new Occurrence(docFile, 1);
-						hash.put(key,  o);
+			scanner.open(channel);
+			while (scanner.nextWord()){
+				String key = scanner.keyWord();
+				if (key == null){
+					continue;
+				}
+				o = hash.get(key);
+				if (o != null){
+					o.frequency++;
+				}
+				else {
+					o = new Occurrence(docFile, 1);
+					hash.put(key,  o);
+					if (positional){
+						o.positions = new PositionList();
 					}
 				}
+				if (positional){
+					o.positions.add(scanner.position());
+				}
+			}
+			if (positional){
+				for (Occurrence occurrence : hash.values()){
+					occurrence.words = scanner.position() + 1;
+				}
 			}
-			br.close();
 		}
 		catch (IOException e){
 			System.out.println("IO Error");
 			return null;
 		}
+		finally {
+			try {
+				channel.close();
+			}
+			catch (IOException e){
+				// nothing more to read, the keywords are already loaded
+			}
+		}
+		if (m != null){
+			m.scanned(docFile, scanner.position() + 1, start);
+		}
 		return hash;
 	}
 	
@@ -144,69 +795,136 @@ public class LittleSearchEngine {
 	 * Merges the keywords for a single document into the master keywordsIndex
 	 * hash table. For each keyword, its Occurrence in the current document
 	 * must be inserted in the correct place (according to descending order of
-	 * frequency) in the same keyword's Occurrence list in the master hash table. 
-	 * This is done by calling the insertLastOccurrence method.
+	 * frequency) in the same keyword's posting list in the master hash table. 
+	 * Documents with the same frequency are kept in ascending order of document id.
+	 * While makeIndex is building the index, occurrences are instead appended at the end
+	 * of their lists, and makeIndex sorts each list once when it is done, into the same order.
 	 * 
 	 * @param kws Keywords hash table for a document
 	 */
-	public void mergeKeyWords(HashMap<String,Occurrence> kws) {
+	public synchronized void mergeKeyWords(HashMap<String,Occurrence> kws) {
 		if (kws == null){
 			return;
 		}
-		Set<String> keys = kws.keySet();
-		Iterator<String> iterator = keys.iterator();
-		while (iterator.hasNext()){
-			String key = iterator.next();
-			
-			Occurrence o = kws.get(key);
-			ArrayList<Occurrence> list;
-			if (o != null){
-				list = keywordsIndex.get(key);
-				if (list == null){
-					list = new ArrayList<Occurrence>();
-				}
-				
-				list.add(o);
-				list.trimToSize();
-				//System.out.println(insertLastOccurrence(list));
-				Occurrence item = list.remove(list.size()-1);
-				list.trimToSize();
-				int left = 0;
-				int right = list.size()-1;
-				int mid = 0;
-				boolean added = false;
-				while (left < right){
-					mid = (left+right)/2;
-					if (list.get(mid).frequency == item.frequency){
-						list.add(mid, item);
-						added = true;
-						break;
-					}
-					else if (list.get(mid).frequency > item.frequency){
-						left = mid + 1;
-					}
-					else {
-						right = mid;
-					}
-				}
-				if (added == true){
-					keywordsIndex.put(key,  list);
-					continue;
-				}
-				if (list.size() == 0){
-					list.add(item);
-					keywordsIndex.put(key,  list);
-					continue;
-				}
-				if (list.get(list.size()-1).frequency >= item.frequency){
-					list.add(item);
-				}
-				else {
-					list.add(left, item);
-				}
-				keywordsIndex.put(key, list);
+		merge(kws);
+		indexChanged();
+	}
+	
+	/**
+	 * Merges the keywords for a single document into keywordsIndex, as mergeKeyWords does,
+	 * without publishing the change.
+	 * 
+	 * @param kws Keywords hash table for a document
+	 */
+	private void merge(HashMap<String,Occurrence> kws) {
+		EngineMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		loadSegment();
+		for (Map.Entry<String,Occurrence> entry : kws.entrySet()){
+			Occurrence o = entry.getValue();
+			if (o == null){
+				continue;
+			}
+			int keyword = keywordsIndex.id(entry.getKey());
+			Postings list = writable(keyword);
+			if (list == null){
+				list = new Postings();
+				keywordsIndex.put(keyword, list);
+			}
+			int doc = documents.id(o.document);
+			byte[] encoded = o.positions == null ? null : o.positions.toByteArray();
+			if (!building){
+				list.insert(doc, o.frequency, encoded);
+			}
+			else if (list.append(doc, o.frequency, encoded)){
+				unsortedLists.add(list);
+			}
+			documents.addKeyword(doc, keyword, o.frequency);
+			if (o.words > documents.words(doc)){
+				documents.setWords(doc, o.words);
 			}
 		}
+		if (segments != null && documents.size() >= segments.flushEvery){
+			flush();
+		}
+		if (m != null){
+			m.merged(kws.isEmpty() ? null : kws.values().iterator().next().document, start);
+		}
+	}
+	
+	/**
+	 * Adds a single document to the index. If the document is already in the index, it is
+	 * re-indexed as with updateDocument. Only the posting lists of the document's keywords
+	 * are touched. Taking the old copy of the document out and putting the new one in is a
+	 * single change, so concurrent searches see either copy, never neither.
+	 * 
+	 * @param docFile Name of the document file
+	 * @throws FileNotFoundException If the document file is not found on disk
+	 */
+	public synchronized void addDocument(String docFile) 
+	throws FileNotFoundException {
+		EngineMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		HashMap<String,Occurrence> kws = loadKeyWords(docFile);
+		if (kws == null){
+			return;
+		}
+		remove(docFile);
+		merge(kws);
+		indexChanged();
+		if (m != null){
+			m.indexed(start);
+		}
+	}
+	
+	/**
+	 * Re-indexes a document that has changed on disk. The document's old occurrences are
+	 * removed from the posting lists of its old keywords, and its new occurrences are inserted
+	 * in the posting lists of its new keywords, in descending order of frequency.
+	 * 
+	 * @param docFile Name of the document file
+	 * @throws FileNotFoundException If the document file is not found on disk
+	 */
+	public void updateDocument(String docFile) 
+	throws FileNotFoundException {
+		addDocument(docFile);
+	}
+	
+	/**
+	 * Removes a document from the index. Its occurrence is taken out of the posting list of
+	 * each of its keywords, and keywords that occur in no other document are dropped.
+	 * 
+	 * @param docFile Name of the document file
+	 * @return True if the document was in the index, false otherwise
+	 */
+	public synchronized boolean deleteDocument(String docFile) {
+		if (!remove(docFile)){
+			return false;
+		}
+		indexChanged();
+		return true;
+	}
+	
+	/**
+	 * Removes a document from the index, as deleteDocument does, without publishing the change.
+	 * 
+	 * @param docFile Name of the document file
+	 * @return True if the document was in the index, false otherwise
+	 */
+	private boolean remove(String docFile) {
+		loadSegment();
+		int doc = documents.find(docFile.trim());
+		if (doc == -1){
+			return segments != null && segments.delete(docFile.trim());
+		}
+		for (int keyword : documents.keywords(doc)){
+			Postings list = writable(keyword);
+			if (list != null && list.remove(doc) && list.size == 0){
+				keywordsIndex.put(keyword, null);
+			}
+		}
+		documents.remove(doc);
+		return true;
 	}
 	
 	/**
@@ -221,42 +939,7 @@ public class LittleSearchEngine {
 	 * @return Keyword (word without trailing punctuation, LOWER CASE)
 	 */
 	public String getKeyWord(String word) {
-		word = word.toLowerCase();
-		String key = "";
-		for (int i = 0; i < word.length(); i++){
-			char c = word.charAt(i);
-			if (i == 0 && (c == '\'' || c == '\"' || c == '(' || c == '[' || c == '{')){
-				continue;
-			}
-			if (Character.isLetter(c)){
-				key += c;
-			}
-			else {
-				while (i < word.length()-1){
-					char c_next = word.charAt(i+1);
-					if (Character.isLetter(c_next)){
-						key = null;
-						break;
-					}
-					i++;
-				}
-				if (key == null){
-					break;
-				}
-			}
-		}
-		String str = noiseWords.get(key);
-		if (str != null){
-			if (str.equals(key)){
-				key = null;
-			}
-		}
-		if (key != null){
-			if (key.equals("")){
-				key = null;
-			}
-		}
-		return key;
+		return scanners.get().keyWord(word);
 	}
 	
 	/**
@@ -323,93 +1006,351 @@ public class LittleSearchEngine {
 	 *         the result is null.
 	 */
 	public ArrayList<String> top5search(String kw1, String kw2) {
-		
-		ArrayList<Occurrence> save1 = keywordsIndex.get(kw1);
-		ArrayList<Occurrence> save2 = keywordsIndex.get(kw2);
-		
-		if (save1 == null && save2 == null){
-			return null;
+		return topKSearch(5, kw1, kw2);
+	}
+	
+	/**
+	 * Search result for "kw1 or kw2 or ... or kwn". A document is in the result set if any of the
+	 * keywords occurs in it, and its frequency is the sum of the keywords' frequencies in it. As in
+	 * top5search, the result set is arranged in descending order of frequency, ties are broken in
+	 * favor of the earlier keyword, and a matching document appears only once. The posting lists
+	 * are only read as far as needed to settle the top k documents.
+	 * 
+	 * @param k Maximum number of documents in the result
+	 * @param keywords Keywords to search for
+	 * @return List of NAMES of documents in which any of the keywords occurs, arranged in descending
+	 *         order of frequencies. If there are no matching documents, the result is null.
+	 */
+	public ArrayList<String> topKSearch(int k, String... keywords) {
+		EngineMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		try {
+			if (k < 0){
+				throw new IllegalArgumentException("k must not be negative: " + k);
+			}
+			return topK(k, keywords);
 		}
-		if (save1 == null){
-			ArrayList<String> strings = new ArrayList<String>(save2.size());
-			for (int i = 0; i < save2.size(); i++){
-				if (i == 5){
-					return strings;
-				}
-				strings.add(save2.get(i).document);
+		finally {
+			if (m != null){
+				m.searched(EngineMetrics.Query.TOP_K, start, keywords);
 			}
-			return strings;
 		}
-		if (save2 == null){
-			ArrayList<String> strings = new ArrayList<String>(save1.size());
-			for (int i = 0; i < save1.size(); i++){
-				if (i == 5){
-					return strings;
-				}
-				strings.add(save1.get(i).document);
+	}
+	
+	/**
+	 * Runs topKSearch, through the result cache if it is on, without recording metrics.
+	 * 
+	 * @param k Maximum number of documents in the result, not negative
+	 * @param keywords Keywords to search for
+	 * @return List of NAMES of matching documents, null if there are none
+	 */
+	private ArrayList<String> topK(int k, String[] keywords) {
+		QueryCache c = cache;
+		List<Object> key = null;
+		long generation = 0;
+		if (c != null){
+			key = QueryCache.key(k, keywords);
+			generation = c.generation();
+			ArrayList<String> cached = c.get(key);
+			if (cached != null){
+				return cached == QueryCache.NO_MATCH ? null : cached;
+			}
+		}
+		IndexReader index = reader();
+		int[] docs = TopKSearch.threshold(index, keywords, k);
+		ArrayList<String> result = docs == null ? null : names(index, docs, docs.length);
+		if (c != null){
+			c.put(key, result, generation);
+		}
+		return result;
+	}
+	
+	/**
+	 * Search result for "kw1 or kw2 or ... or kwn", ranked by the given scoring. With FREQUENCY
+	 * this is the same as topKSearch, but timed as a ranked search. TF_IDF and BM25 take the number of documents each keyword
+	 * occurs in, and the length of each document, into account, so that long documents do not
+	 * win just for being long. Ties are broken in favor of the earlier keyword.
+	 * 
+	 * @param scoring How to rank the documents
+	 * @param k Maximum number of documents in the result
+	 * @param keywords Keywords to search for
+	 * @return List of NAMES of documents in which any of the keywords occurs, best first.
+	 *         If there are no matching documents, the result is null.
+	 */
+	public ArrayList<String> rankedSearch(Scoring scoring, int k, String... keywords) {
+		EngineMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		try {
+			if (k < 0){
+				throw new IllegalArgumentException("k must not be negative: " + k);
+			}
+			if (scoring == Scoring.FREQUENCY){
+				return topK(k, keywords);
+			}
+			IndexReader index = reader();
+			RankedSearch.Norms n = norms;
+			if (n == null || n.index != index){
+				n = new RankedSearch.Norms(index);
+				norms = n;
 			}
-			return strings;
+			int[] docs = RankedSearch.search(n, scoring == Scoring.BM25, keywords, k);
+			return docs == null ? null : names(index, docs, docs.length);
 		}
-		ArrayList<Occurrence> list1 = new ArrayList<Occurrence>(save1.size());
-		for (int i = 0; i < save1.size(); i++){
-			Occurrence o = new Occurrence(save1.get(i).document, save1.get(i).frequency);
-			list1.add(o);
+		finally {
+			if (m != null){
+				m.searched(EngineMetrics.Query.RANKED, start, keywords);
+			}
 		}
-		ArrayList<Occurrence> list2 = new ArrayList<Occurrence>(save2.size());
-		for (int i = 0; i < save2.size(); i++){
-			Occurrence o = new Occurrence(save2.get(i).document, save2.get(i).frequency);
-			list2.add(o);
+	}
+	
+	/**
+	 * Search result for all keywords matching a wildcard pattern, where '*' matches any run of
+	 * characters and '?' matches any one character; "comput*", for instance, searches for every
+	 * keyword that starts with "comput". Keywords are lower case. The matching keywords are found
+	 * in a sorted dictionary of keywords, and searched as in topKSearch, with ties broken in
+	 * favor of the keyword that comes first in alphabetical order.
+	 * 
+	 * @param k Maximum number of documents in the result
+	 * @param pattern Wildcard pattern
+	 * @return List of NAMES of documents in which a matching keyword occurs, best first. If there
+	 *         are no matching documents, the result is null.
+	 */
+	public ArrayList<String> wildcardSearch(int k, String pattern) {
+		EngineMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		try {
+			if (k < 0){
+				throw new IllegalArgumentException("k must not be negative: " + k);
+			}
+			IndexReader index = reader();
+			String[] keywords = TermRangeSearch.wildcard(dictionary(index), pattern);
+			int[] docs = TopKSearch.search(index, keywords, k);
+			return docs == null ? null : names(index, docs, docs.length);
 		}
-		ArrayList<Occurrence> occs = new ArrayList<Occurrence>();
-		for (int i = 0; i < list1.size(); i++){
-			occs.add(list1.get(i));
+		finally {
+			if (m != null){
+				m.searched(EngineMetrics.Query.WILDCARD, start, pattern);
+			}
 		}
-		list1.trimToSize();
-		list2.trimToSize();
-		occs.trimToSize();
-		
-		for (int i = 0; i < list2.size(); i++){
-			Occurrence o = list2.get(i);
-			boolean found = false;
-			for (int j = 0; j < occs.size(); j++){
-				if (occs.get(j).document.equals(o.document)){
-					occs.get(j).frequency += o.frequency;
-					found = true;
-					break;
-				}
+	}
+	
+	/**
+	 * Search result for all keywords from one keyword to another, in alphabetical order. The
+	 * keywords in the range are found in a sorted dictionary of keywords, and searched as in
+	 * topKSearch, with ties broken in favor of the keyword that comes first alphabetically.
+	 * 
+	 * @param k Maximum number of documents in the result
+	 * @param from First keyword of the range, inclusive
+	 * @param to Last keyword of the range, inclusive
+	 * @return List of NAMES of documents in which a keyword in the range occurs, best first. If
+	 *         there are no matching documents, the result is null.
+	 */
+	public ArrayList<String> rangeSearch(int k, String from, String to) {
+		EngineMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		try {
+			if (k < 0){
+				throw new IllegalArgumentException("k must not be negative: " + k);
 			}
-			if (!found){
-				occs.add(o);
+			IndexReader index = reader();
+			String[] keywords = TermRangeSearch.range(dictionary(index), from, to);
+			int[] docs = TopKSearch.search(index, keywords, k);
+			return docs == null ? null : names(index, docs, docs.length);
+		}
+		finally {
+			if (m != null){
+				m.searched(EngineMetrics.Query.RANGE, start, from, to);
 			}
 		}
-		for (int i = 0; i < occs.size(); i++){
-			int position = i;
-			Occurrence current = occs.get(i);
-			while (position > 0 && occs.get(position-1).frequency < current.frequency){
-				occs.set(position,  occs.get(position-1));
-				position -= 1;
+	}
+	
+	/**
+	 * Search result for all keywords within a small edit distance of a keyword, for queries with
+	 * typos. The edit distance is the number of characters that have to be inserted, deleted or
+	 * replaced to turn one keyword into the other. Matching keywords are found by running a
+	 * Levenshtein automaton over a sorted dictionary of keywords, and searched as in topKSearch,
+	 * with ties broken in favor of the closest keyword, then of the keyword that comes first
+	 * alphabetically.
+	 * 
+	 * @param k Maximum number of documents in the result
+	 * @param kw Keyword, possibly misspelled
+	 * @param distance Largest edit distance, from 0 to 2
+	 * @return List of NAMES of documents in which a matching keyword occurs, best first. If there
+	 *         are no matching documents, the result is null.
+	 * @throws IllegalArgumentException If distance is out of range
+	 */
+	public ArrayList<String> fuzzySearch(int k, String kw, int distance) {
+		EngineMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		try {
+			if (k < 0){
+				throw new IllegalArgumentException("k must not be negative: " + k);
 			}
-			occs.set(position,  current);
-			
+			LevenshteinAutomaton automaton = new LevenshteinAutomaton(kw, distance);
+			IndexReader index = reader();
+			String[] keywords = automaton.terms(dictionary(index));
+			int[] docs = TopKSearch.search(index, keywords, k);
+			return docs == null ? null : names(index, docs, docs.length);
 		}
-		ArrayList<String> strings = new ArrayList<String>(5);
-		for (int i = 0; i < occs.size(); i++){
-			if (i == 5){
-				break;
+		finally {
+			if (m != null){
+				m.searched(EngineMetrics.Query.FUZZY, start, kw);
 			}
-			strings.add(occs.get(i).document);
+		}
+	}
+	
+	/**
+	 * Returns the sorted keyword dictionary of an index, building it if needed.
+	 * 
+	 * @param index Index the dictionary is for
+	 * @return Keyword dictionary
+	 */
+	private TermDictionary dictionary(IndexReader index) {
+		TermDictionary d = dictionary;
+		if (d == null || d.index != index){
+			d = new TermDictionary(index);
+			dictionary = d;
+		}
+		return d;
+	}
+	
+	/**
+	 * Search result for a phrase: the documents in which the keywords of the phrase occur next
+	 * to each other, in order. Words of the phrase that are not keywords (noise words, for
+	 * example) match any word at their place. Documents are arranged in descending order of the
+	 * number of times the phrase occurs. Only documents indexed with positions can match; see
+	 * enablePositions.
+	 * 
+	 * @param k Maximum number of documents in the result
+	 * @param phrase Words of the phrase, separated by spaces
+	 * @return List of NAMES of documents that contain the phrase, null if none does
+	 */
+	public ArrayList<String> phraseSearch(int k, String phrase) {
+		EngineMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		try {
+			if (k < 0){
+				throw new IllegalArgumentException("k must not be negative: " + k);
+			}
+			StringTokenizer st = new StringTokenizer(phrase);
+			String[] words = new String[st.countTokens()];
+			for (int i = 0; i < words.length; i++){
+				words[i] = getKeyWord(st.nextToken());
+			}
+			IndexReader index = reader();
+			int[] docs = PhraseSearch.phrase(index, words, k);
+			return docs == null ? null : names(index, docs, docs.length);
+		}
+		finally {
+			if (m != null){
+				m.searched(EngineMetrics.Query.PHRASE, start, phrase);
+			}
+		}
+	}
+	
+	/**
+	 * Search result for "kw1 NEAR/distance kw2": the documents in which the two keywords occur
+	 * within distance words of each other, in either order. Documents are arranged in descending
+	 * order of the number of occurrences of kw1 that have kw2 that close. Only documents indexed
+	 * with positions can match; see enablePositions.
+	 * 
+	 * @param k Maximum number of documents in the result
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @param distance Largest number of words from one keyword to the other, at least 1
+	 * @return List of NAMES of documents in which the keywords occur near each other, null if none
+	 */
+	public ArrayList<String> nearSearch(int k, String kw1, String kw2, int distance) {
+		EngineMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		try {
+			if (k < 0){
+				throw new IllegalArgumentException("k must not be negative: " + k);
+			}
+			if (distance < 1){
+				throw new IllegalArgumentException("distance must be at least 1: " + distance);
+			}
+			String key1 = getKeyWord(kw1);
+			String key2 = getKeyWord(kw2);
+			if (key1 == null || key2 == null){
+				return null;
+			}
+			IndexReader index = reader();
+			int[] docs = PhraseSearch.near(index, key1, key2, distance, k);
+			return docs == null ? null : names(index, docs, docs.length);
+		}
+		finally {
+			if (m != null){
+				m.searched(EngineMetrics.Query.NEAR, start, kw1, kw2);
+			}
+		}
+	}
+	
+	/**
+	 * Search result for a boolean query such as "apple AND cherry AND NOT banana": the documents
+	 * that contain every keyword of the query except those preceded by NOT, and none of those.
+	 * AND between words may be left out. Words that are not keywords (noise words, for example)
+	 * are ignored. Documents are arranged in descending order of the sum of the frequencies of
+	 * the required keywords, and ties are broken as in top5search. The posting lists are walked
+	 * in order of document id, shortest first, skipping the parts of longer lists that cannot
+	 * match, so a query stays fast when one of its keywords is very common.
+	 * 
+	 * @param k Maximum number of documents in the result
+	 * @param query Words, separated by spaces, with the operators AND and NOT in upper case
+	 * @return List of NAMES of matching documents, best first. If there are no matching documents,
+	 *         or the query has no required keyword, the result is null.
+	 */
+	public ArrayList<String> booleanSearch(int k, String query) {
+		EngineMetrics m = metrics;
+		long start = m == null ? 0 : System.nanoTime();
+		try {
+			if (k < 0){
+				throw new IllegalArgumentException("k must not be negative: " + k);
+			}
+			ArrayList<String> required = new ArrayList<String>();
+			ArrayList<String> excluded = new ArrayList<String>();
+			boolean not = false;
+			StringTokenizer st = new StringTokenizer(query);
+			while (st.hasMoreTokens()){
+				String word = st.nextToken();
+				if (word.equals("AND")){
+					continue;
+				}
+				if (word.equals("NOT")){
+					not = true;
+					continue;
+				}
+				String keyword = getKeyWord(word);
+				if (keyword != null){
+					(not ? excluded : required).add(keyword);
+				}
+				not = false;
+			}
+			IndexReader index = reader();
+			int[] docs = BooleanSearch.search(index, required.toArray(new String[0]), 
+					excluded.toArray(new String[0]), k);
+			return docs == null ? null : names(index, docs, docs.length);
+		}
+		finally {
+			if (m != null){
+				m.searched(EngineMetrics.Query.BOOLEAN, start, query);
+			}
+		}
+	}
+	
+	/**
+	 * Looks up the names of the first count documents in an array of document ids.
+	 * 
+	 * @param index Index that supplies the document names
+	 * @param docs Document ids
+	 * @param count Number of ids to look up
+	 * @return Names of the documents, in the same order
+	 */
+	private static ArrayList<String> names(IndexReader index, int[] docs, int count) {
+		ArrayList<String> strings = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++){
+			strings.add(index.documentName(docs[i]));
 		}
 		return strings;
-		
-		
-		
 	}
 }
-
-
-
-
-
-
-
-
@@ -0,0 +1,49 @@
+package search;
+
+import java.io.*;
+
+/**
+ * A shard held in the same JVM as its ShardedEngine.
+ *
+ */
+class LocalShard implements Shard {
+
+	/**
+	 * Index of this shard's documents.
+	 */
+	final LittleSearchEngine engine = new LittleSearchEngine();
+
+	public void loadNoiseWords(String noiseWordsFile)
+	throws IOException {
+		engine.loadNoiseWords(noiseWordsFile);
+	}
+
+	public void addDocument(String docFile)
+	throws IOException {
+		engine.addDocument(docFile);
+	}
+
+	public boolean deleteDocument(String docFile) {
+		return engine.deleteDocument(docFile);
+	}
+
+	public ShardHits search(int k, String[] keywords) {
+		return search(engine, k, keywords);
+	}
+
+	/**
+	 * Searches an engine for a ShardedEngine.
+	 *
+	 * @param engine Engine of a shard
+	 * @param k Maximum number of documents
+	 * @param keywords Keywords
+	 * @return Best documents of the engine, null if none of the keywords is in it
+	 */
+	static ShardHits search(LittleSearchEngine engine, int k, String[] keywords) {
+		IndexReader index = engine.reader();
+		return ShardHits.of(index, keywords, TopKSearch.threshold(index, keywords, k));
+	}
+
+	public void close() {
+	}
+}
@@ -0,0 +1,210 @@
+package search;
+
+import java.util.*;
+
+/**
+ * This class is a read-only set of noise words that can be probed with a span of characters.
+ * It is built once from the noise words with a minimal perfect hash (hash and displace): the
+ * words are spread over buckets by one hash, and each bucket gets a displacement that sends
+ * all of its words to free slots of a table with exactly one slot per word. A lookup is then
+ * a single hash of the span, two array reads and one comparison with the only word that can
+ * match, with no probing and no String.
+ *
+ */
+class NoiseFilter {
+
+	/**
+	 * Average number of words per bucket. Larger buckets make the displacement table smaller
+	 * and the build slower.
+	 */
+	private static final int BUCKET_SIZE = 4;
+
+	/**
+	 * Seed of the hash function, changed if no displacements can be found with it.
+	 */
+	private long seed;
+
+	/**
+	 * Displacement of each bucket.
+	 */
+	private int[] displacements;
+
+	/**
+	 * Characters of the word in each slot, one after another, and the offset of each slot's
+	 * word in them, with one more offset for the end of the last word.
+	 */
+	private char[] chars;
+	private int[] starts;
+
+	/**
+	 * Bit n is set if some word has length n, bit 63 for all lengths of 63 and more, so most
+	 * spans are turned down before they are hashed.
+	 */
+	private long lengths;
+
+	/**
+	 * Builds a filter for a set of noise words.
+	 *
+	 * @param words Noise words
+	 */
+	NoiseFilter(Collection<String> words) {
+		String[] keys = new LinkedHashSet<String>(words).toArray(new String[0]);
+		int n = keys.length;
+		for (String key : keys){
+			lengths |= 1L << Math.min(key.length(), 63);
+		}
+		int buckets = Math.max(1, (n + BUCKET_SIZE - 1) / BUCKET_SIZE);
+		String[] slots = new String[n];
+		for (seed = 0x9E3779B97F4A7C15L; ; seed = mix(seed)){
+			if (place(keys, slots, buckets)){
+				break;
+			}
+		}
+		starts = new int[n + 1];
+		int length = 0;
+		for (int i = 0; i < n; i++){
+			starts[i] = length;
+			length += slots[i].length();
+		}
+		starts[n] = length;
+		chars = new char[length];
+		for (int i = 0; i < n; i++){
+			slots[i].getChars(0, slots[i].length(), chars, starts[i]);
+		}
+	}
+
+	/**
+	 * Finds a displacement for every bucket with the current seed, biggest buckets first,
+	 * and puts every word in its slot.
+	 *
+	 * @return False if some bucket has no displacement that fits
+	 */
+	private boolean place(String[] keys, String[] slots, int buckets) {
+		int n = keys.length;
+		Arrays.fill(slots, null);
+		displacements = new int[buckets];
+		long[] hashes = new long[n];
+		int[] sizes = new int[buckets];
+		for (int i = 0; i < n; i++){
+			hashes[i] = hash(keys[i]);
+			sizes[bucket(hashes[i], buckets)]++;
+		}
+		// keys grouped by bucket, buckets in descending order of size
+		long[] order = new long[buckets];
+		for (int b = 0; b < buckets; b++){
+			order[b] = ((long)(n - sizes[b]) << 32) | b;
+		}
+		Arrays.sort(order);
+		int[] first = new int[buckets + 1];
+		for (int b = 0; b < buckets; b++){
+			first[b+1] = first[b] + sizes[b];
+		}
+		int[] members = new int[n];
+		int[] filled = new int[buckets];
+		for (int i = 0; i < n; i++){
+			int b = bucket(hashes[i], buckets);
+			members[first[b] + filled[b]++] = i;
+		}
+		int[] taken = new int[BUCKET_SIZE * 8];
+		for (long o : order){
+			int b = (int)o;
+			int size = sizes[b];
+			if (size == 0){
+				break;
+			}
+			if (taken.length < size){
+				taken = new int[size];
+			}
+			boolean found = false;
+			for (int d = 0; d < n * 64 && !found; d++){
+				found = true;
+				for (int j = 0; j < size; j++){
+					int slot = slot(hashes[members[first[b] + j]], d, n);
+					boolean clash = slots[slot] != null;
+					for (int k = 0; k < j && !clash; k++){
+						clash = taken[k] == slot;
+					}
+					if (clash){
+						found = false;
+						break;
+					}
+					taken[j] = slot;
+				}
+				if (found){
+					displacements[b] = d;
+					for (int j = 0; j < size; j++){
+						slots[taken[j]] = keys[members[first[b] + j]];
+					}
+				}
+			}
+			if (!found){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tells whether a span of characters is a noise word.
+	 *
+	 * @param buf Characters
+	 * @param off Start of span in buf
+	 * @param len Length of span
+	 * @return True if the span is a noise word, false otherwise
+	 */
+	boolean contains(char[] buf, int off, int len) {
+		if ((lengths & (1L << Math.min(len, 63))) == 0){
+			return false;
+		}
+		long h = hash(buf, off, len);
+		int n = starts.length - 1;
+		int slot = slot(h, displacements[bucket(h, displacements.length)], n);
+		int start = starts[slot];
+		if (starts[slot+1] - start != len){
+			return false;
+		}
+		for (int i = 0; i < len; i++){
+			if (chars[start+i] != buf[off+i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int bucket(long h, int buckets) {
+		return (int)(((h >>> 32) * buckets) >>> 32);
+	}
+
+	private static int slot(long h, int displacement, int n) {
+		long x = mix(h ^ (displacement * 0xC2B2AE3D27D4EB4FL));
+		return (int)(((x & 0xFFFFFFFFL) * n) >>> 32);
+	}
+
+	private long hash(char[] buf, int off, int len) {
+		long h = seed;
+		for (int i = off; i < off + len; i++){
+			h = (h ^ buf[i]) * 0x100000001B3L;
+		}
+		return mix(h);
+	}
+
+	private long hash(String str) {
+		long h = seed;
+		for (int i = 0; i < str.length(); i++){
+			h = (h ^ str.charAt(i)) * 0x100000001B3L;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * Scrambles the bits of a hash code (the finalizer of MurmurHash3).
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,51 @@
+package search;
+
+/**
+ * This class encapsulates an occurrence of a keyword in a document. It stores the
+ * document name, and the frequency of occurrence in that document. Occurrences are
+ * associated with keywords in an index hash table.
+ * 
+ * @author Sesh Venugopal
+ * 
+ */
+class Occurrence {
+	/**
+	 * Document in which a keyword occurs.
+	 */
+	String document;
+	
+	/**
+	 * The frequency (number of times) the keyword occurs in the above document.
+	 */
+	int frequency;
+	
+	/**
+	 * Positions (word numbers) of the keyword in the above document. Only filled in when
+	 * the search engine keeps positions, null otherwise.
+	 */
+	PositionList positions;
+
+	/**
+	 * Number of words in the above document, noise words included. Only filled in when the
+	 * search engine keeps positions, 0 otherwise.
+	 */
+	int words;
+	
+	/**
+	 * Initializes this occurrence with the given document,frequency pair.
+	 * 
+	 * @param doc Document name
+	 * @param freq Frequency
+	 */
+	public Occurrence(String doc, int freq) {
+		document = doc;
+		frequency = freq;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "(" + document + "," + frequency + ")";
+	}
+}
@@ -0,0 +1,164 @@
+package search;
+
+import java.util.*;
+
+/**
+ * Phrase and proximity searches over a positional index. Both walk the shortest posting list,
+ * look each of its documents up in the other lists, and then compare the positions of the
+ * keywords in the document. Documents are ranked by the number of matches, and ties are broken
+ * in favor of the document that comes first in the first keyword's posting list.
+ *
+ */
+class PhraseSearch {
+
+	private PhraseSearch() {
+	}
+
+	/**
+	 * Returns the best k documents that contain the words in order, next to each other.
+	 *
+	 * @param index Index to search
+	 * @param words Keywords of the phrase; null for a word that is not a keyword, which matches any word
+	 * @param k Maximum number of documents to return
+	 * @return Ids of the matching documents, best first; null if no document matches
+	 */
+	static int[] phrase(IndexReader index, String[] words, int k) {
+		int count = 0;
+		for (String word : words){
+			if (word != null){
+				count++;
+			}
+		}
+		if (count == 0){
+			return null;
+		}
+		Postings[] lists = new Postings[count];
+		int[] offsets = new int[count];
+		int shortest = 0;
+		for (int i = 0, t = 0; i < words.length; i++){
+			if (words[i] == null){
+				continue;
+			}
+			lists[t] = index.postings(words[i]);
+			if (lists[t] == null){
+				return null;
+			}
+			offsets[t] = i;
+			if (lists[t].size < lists[shortest].size){
+				shortest = t;
+			}
+			t++;
+		}
+		Postings driver = lists[shortest];
+		TopDocs top = new TopDocs(k, driver.size);
+		int matched = 0;
+		int[][] positions = new int[count][];
+		int[] at = new int[count];
+		for (int i = 0; i < driver.size; i++){
+			int doc = driver.docs[i];
+			if (!lookUp(lists, doc, at, positions)){
+				continue;
+			}
+			int matches = 0;
+			int last = index.documentWords(doc) - 1;
+			for (int p : positions[0]){
+				int start = p - offsets[0];
+				if (start < 0){
+					// the words before the first keyword would come before the document starts
+					continue;
+				}
+				if (last >= 0 && start + words.length - 1 > last){
+					// the words after the last keyword would come after the document ends
+					continue;
+				}
+				boolean all = true;
+				for (int t = 1; t < count && all; t++){
+					all = Arrays.binarySearch(positions[t], start + offsets[t]) >= 0;
+				}
+				if (all){
+					matches++;
+				}
+			}
+			if (matches > 0){
+				matched++;
+				top.offer(doc, matches, at[0]);
+			}
+		}
+		return matched == 0 ? null : top.drain();
+	}
+
+	/**
+	 * Returns the best k documents in which the two keywords occur within distance words of
+	 * each other. A document scores one for each occurrence of kw1 with an occurrence of kw2
+	 * that close.
+	 *
+	 * @param index Index to search
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @param distance Largest number of words from one keyword to the other
+	 * @param k Maximum number of documents to return
+	 * @return Ids of the matching documents, best first; null if no document matches
+	 */
+	static int[] near(IndexReader index, String kw1, String kw2, int distance, int k) {
+		Postings[] lists = new Postings[] { index.postings(kw1), index.postings(kw2) };
+		if (lists[0] == null || lists[1] == null){
+			return null;
+		}
+		Postings driver = lists[0].size <= lists[1].size ? lists[0] : lists[1];
+		TopDocs top = new TopDocs(k, driver.size);
+		int matched = 0;
+		int[][] positions = new int[2][];
+		int[] at = new int[2];
+		for (int i = 0; i < driver.size; i++){
+			int doc = driver.docs[i];
+			if (!lookUp(lists, doc, at, positions)){
+				continue;
+			}
+			int[] first = positions[0];
+			int[] second = positions[1];
+			int matches = 0;
+			int j = 0;
+			for (int p : first){
+				while (j < second.length && second[j] < p - distance){
+					j++;
+				}
+				// the same occurrence does not count when both keywords are the same
+				for (int m = j; m < second.length && second[m] <= p + distance; m++){
+					if (second[m] != p){
+						matches++;
+						break;
+					}
+				}
+			}
+			if (matches > 0){
+				matched++;
+				top.offer(doc, matches, at[0]);
+			}
+		}
+		return matched == 0 ? null : top.drain();
+	}
+
+	/**
+	 * Finds a document in every list and decodes its positions.
+	 *
+	 * @param lists Posting lists
+	 * @param doc Document id
+	 * @param at Set to the position of the document's entry in each list
+	 * @param positions Set to the decoded positions of each keyword in the document
+	 * @return False if the document is missing from a list, or was indexed without positions
+	 */
+	private static boolean lookUp(Postings[] lists, int doc, int[] at, int[][] positions) {
+		for (int t = 0; t < lists.length; t++){
+			Postings list = lists[t];
+			int pos = list.position(doc);
+			if (pos == -1 || list.positions == null || list.positions[pos] == null){
+				return false;
+			}
+			at[t] = pos;
+		}
+		for (int t = 0; t < lists.length; t++){
+			positions[t] = PositionList.decode(lists[t].positions[at[t]], lists[t].freqs[at[t]]);
+		}
+		return true;
+	}
+}
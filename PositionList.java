@@ -0,0 +1,76 @@
+package search;
+
+import java.util.*;
+
+/**
+ * This class holds the positions at which a keyword occurs in a document, as word numbers
+ * starting at 0. Positions are added in increasing order and stored as variable-byte encoded
+ * gaps, so most positions take a single byte.
+ *
+ */
+class PositionList {
+
+	private byte[] bytes;
+
+	private int length;
+
+	/**
+	 * Last position added.
+	 */
+	private int last;
+
+	/**
+	 * Initializes an empty list.
+	 */
+	PositionList() {
+		bytes = new byte[8];
+	}
+
+	/**
+	 * Adds a position, which must be greater than every position added before.
+	 *
+	 * @param position Word number
+	 */
+	void add(int position) {
+		if (length + 5 > bytes.length){
+			bytes = Arrays.copyOf(bytes, bytes.length * 2);
+		}
+		length = VarInt.write(bytes, length, position - last);
+		last = position;
+	}
+
+	/**
+	 * Returns the encoded positions.
+	 *
+	 * @return Bytes of the encoded gaps, trimmed to size
+	 */
+	byte[] toByteArray() {
+		return Arrays.copyOf(bytes, length);
+	}
+
+	/**
+	 * Decodes positions written by a PositionList.
+	 *
+	 * @param bytes Encoded gaps
+	 * @param count Number of positions, which is the keyword's frequency in the document
+	 * @return Positions in increasing order
+	 */
+	static int[] decode(byte[] bytes, int count) {
+		int[] positions = new int[count];
+		int pos = 0;
+		int value = 0;
+		for (int i = 0; i < count; i++){
+			int gap = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[pos++];
+				gap |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			value += gap;
+			positions[i] = value;
+		}
+		return positions;
+	}
+}
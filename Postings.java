@@ -0,0 +1,444 @@
+package search;
+
+import java.util.*;
+
+/**
+ * This class is the posting list of a keyword: the documents in which the keyword occurs, with
+ * the frequency of occurrence in each. Entries are kept in two parallel int arrays, document
+ * ids and frequencies, in descending order of frequency.
+ *
+ */
+class Postings {
+
+	/**
+	 * Document ids.
+	 */
+	int[] docs;
+
+	/**
+	 * Frequency of the keyword in the document at the same index in docs.
+	 */
+	int[] freqs;
+
+	/**
+	 * Positions of the keyword in the document at the same index in docs, encoded by a
+	 * PositionList. Null if the index does not keep positions, and null for an entry whose
+	 * document was indexed without them.
+	 */
+	byte[][] positions;
+
+	/**
+	 * Number of entries in use.
+	 */
+	int size;
+
+	/**
+	 * Generation of the KeywordTable this list was last put in. A list from an older generation
+	 * may be part of a published IndexSnapshot, and must not be changed; the index copies it first.
+	 */
+	int generation;
+
+	/**
+	 * True if entries were appended out of order, and the list must be sorted before it is read.
+	 */
+	boolean unsorted;
+
+	/**
+	 * Positions of the entries in order of document id, so the entry of a given document can
+	 * be found by binary search. Built on first use, and dropped whenever the list changes.
+	 */
+	private volatile int[] byDoc;
+
+	/**
+	 * Initializes an empty posting list.
+	 */
+	Postings() {
+		docs = new int[4];
+		freqs = new int[4];
+	}
+	
+	/**
+	 * Initializes a posting list with the given entries.
+	 *
+	 * @param docs Document ids
+	 * @param freqs Frequencies, in descending order
+	 * @param size Number of entries in use
+	 */
+	Postings(int[] docs, int[] freqs, int size) {
+		this.docs = docs;
+		this.freqs = freqs;
+		this.size = size;
+	}
+
+	/**
+	 * Returns an unshared copy of this list.
+	 *
+	 * @return Copy of this list
+	 */
+	Postings copy() {
+		Postings list = new Postings(Arrays.copyOf(docs, Math.max(4, size)), Arrays.copyOf(freqs, Math.max(4, size)), size);
+		if (positions != null){
+			list.positions = Arrays.copyOf(positions, Math.max(4, size));
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the number of entries.
+	 *
+	 * @return Number of entries
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the document id of an entry.
+	 *
+	 * @param i Position of the entry, 0 is the highest frequency
+	 * @return Document id
+	 */
+	int doc(int i) {
+		return docs[i];
+	}
+
+	/**
+	 * Returns the frequency of an entry.
+	 *
+	 * @param i Position of the entry, 0 is the highest frequency
+	 * @return Frequency
+	 */
+	int frequency(int i) {
+		return freqs[i];
+	}
+
+	/**
+	 * Inserts an entry in the correct place according to descending order of frequency. Entries
+	 * with the same frequency are kept in ascending order of document id, so the order of a list
+	 * only depends on its entries, not on the order they were inserted in. That is what lets a
+	 * sharded index break ties between documents of different shards exactly as a single index.
+	 *
+	 * @param doc Document id
+	 * @param freq Frequency of the keyword in the document
+	 */
+	void insert(int doc, int freq) {
+		insert(doc, freq, null);
+	}
+
+	/**
+	 * Inserts an entry, with the positions of the keyword in the document, in the correct place
+	 * according to descending order of frequency, then ascending order of document id.
+	 *
+	 * @param doc Document id
+	 * @param freq Frequency of the keyword in the document
+	 * @param encoded Encoded positions of the keyword in the document, may be null
+	 */
+	void insert(int doc, int freq, byte[] encoded) {
+		// first entry that goes after the new one
+		int left = 0;
+		int right = size;
+		while (left < right){
+			int mid = (left+right) >>> 1;
+			if (freqs[mid] > freq || (freqs[mid] == freq && docs[mid] < doc)){
+				left = mid + 1;
+			}
+			else {
+				right = mid;
+			}
+		}
+		int place = left;
+		if (encoded != null && positions == null){
+			positions = new byte[docs.length][];
+		}
+		if (size == docs.length){
+			docs = Arrays.copyOf(docs, Math.max(4, size * 2));
+			freqs = Arrays.copyOf(freqs, Math.max(4, size * 2));
+			if (positions != null){
+				positions = Arrays.copyOf(positions, docs.length);
+			}
+		}
+		System.arraycopy(docs, place, docs, place+1, size-place);
+		System.arraycopy(freqs, place, freqs, place+1, size-place);
+		docs[place] = doc;
+		freqs[place] = freq;
+		if (positions != null){
+			System.arraycopy(positions, place, positions, place+1, size-place);
+			positions[place] = encoded;
+		}
+		size++;
+		byDoc = null;
+	}
+
+	/**
+	 * Appends an entry at the end of this list without looking for its place, for building
+	 * many lists in bulk. Once all entries are appended, sort puts the list in the same order
+	 * as insert would have.
+	 *
+	 * @param doc Document id
+	 * @param freq Frequency of the keyword in the document
+	 * @param encoded Encoded positions of the keyword in the document, may be null
+	 * @return True if this entry made a sorted list unsorted, false otherwise
+	 */
+	boolean append(int doc, int freq, byte[] encoded) {
+		if (encoded != null && positions == null){
+			positions = new byte[docs.length][];
+		}
+		if (size == docs.length){
+			docs = Arrays.copyOf(docs, Math.max(4, size * 2));
+			freqs = Arrays.copyOf(freqs, Math.max(4, size * 2));
+			if (positions != null){
+				positions = Arrays.copyOf(positions, docs.length);
+			}
+		}
+		boolean wasSorted = !unsorted;
+		if (size > 0 && (freqs[size-1] < freq || (freqs[size-1] == freq && docs[size-1] >= doc))){
+			unsorted = true;
+		}
+		docs[size] = doc;
+		freqs[size] = freq;
+		if (positions != null){
+			positions[size] = encoded;
+		}
+		size++;
+		byDoc = null;
+		return wasSorted && unsorted;
+	}
+
+	/**
+	 * Sorts appended entries in descending order of frequency, then ascending order of document
+	 * id. Entries of the same document, which only happen if a document is merged twice, end up
+	 * last appended first, as insert leaves them.
+	 */
+	void sort() {
+		if (!unsorted){
+			return;
+		}
+		// order by document id first, then stable by frequency, with two sorts of packed keys
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++){
+			keys[i] = ((long)docs[i] << 32) | (Integer.MAX_VALUE - i);
+		}
+		Arrays.sort(keys);
+		int[] order = new int[size];
+		for (int r = 0; r < size; r++){
+			order[r] = Integer.MAX_VALUE - (int)keys[r];
+			keys[r] = ((long)(Integer.MAX_VALUE - freqs[order[r]]) << 32) | r;
+		}
+		Arrays.sort(keys);
+		int[] sortedDocs = new int[docs.length];
+		int[] sortedFreqs = new int[freqs.length];
+		byte[][] sortedPositions = positions == null ? null : new byte[positions.length][];
+		for (int j = 0; j < size; j++){
+			int i = order[(int)keys[j]];
+			sortedDocs[j] = docs[i];
+			sortedFreqs[j] = freqs[i];
+			if (positions != null){
+				sortedPositions[j] = positions[i];
+			}
+		}
+		docs = sortedDocs;
+		freqs = sortedFreqs;
+		positions = sortedPositions;
+		unsorted = false;
+		byDoc = null;
+	}
+
+	/**
+	 * Returns the position of a document's entry in this list.
+	 *
+	 * @param doc Document id
+	 * @return Position of the entry, -1 if the document is not in this list
+	 */
+	int position(int doc) {
+		int[] order = byDoc();
+		int left = 0;
+		int right = order.length-1;
+		while (left <= right){
+			int mid = (left+right) >>> 1;
+			int d = docs[order[mid]];
+			if (d == doc){
+				return order[mid];
+			}
+			else if (d < doc){
+				left = mid + 1;
+			}
+			else {
+				right = mid - 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns a cursor over this list, in its own order.
+	 *
+	 * @return New cursor, before the first entry
+	 */
+	PostingsCursor cursor() {
+		final int[] docs = this.docs, freqs = this.freqs;
+		final int size = this.size;
+		return new PostingsCursor() {
+			int i = -1;
+
+			public int size() {
+				return size;
+			}
+
+			public boolean next() {
+				if (i < size){
+					i++;
+				}
+				return i < size;
+			}
+
+			public int doc() {
+				return docs[i];
+			}
+
+			public int freq() {
+				return freqs[i];
+			}
+
+			public int frequency(int doc) {
+				int pos = position(doc);
+				return pos < 0 ? 0 : freqs[pos];
+			}
+		};
+	}
+
+	/**
+	 * Returns a cursor over this list in order of document id, for searches that walk several
+	 * lists by document id. The cursor skips ahead by galloping: it looks 1, 2, 4, ... entries
+	 * ahead until it passes the target, then searches the last step by halves.
+	 *
+	 * @return New cursor, before the first entry
+	 */
+	DocCursor docCursor() {
+		final int[] docs = this.docs, freqs = this.freqs;
+		final int[] order = byDoc();
+		return new DocCursor() {
+			int i = -1, doc = -1;
+
+			public int cost() {
+				return order.length;
+			}
+
+			public int doc() {
+				return doc;
+			}
+
+			public int freq() {
+				return freqs[order[i]];
+			}
+
+			public int nextDoc() {
+				if (i+1 >= order.length){
+					i = order.length;
+					return doc = NO_MORE_DOCS;
+				}
+				return doc = docs[order[++i]];
+			}
+
+			public int advance(int target) {
+				if (doc >= target){
+					return doc;
+				}
+				int left = i + 1;
+				int right = left;
+				for (int step = 1; right < order.length && docs[order[right]] < target; step <<= 1){
+					left = right + 1;
+					right += step;
+				}
+				right = Math.min(right, order.length);
+				// first entry in [left, right) whose document id is at least target
+				while (left < right){
+					int mid = (left+right) >>> 1;
+					if (docs[order[mid]] < target){
+						left = mid + 1;
+					}
+					else {
+						right = mid;
+					}
+				}
+				i = left;
+				return doc = i < order.length ? docs[order[i]] : NO_MORE_DOCS;
+			}
+		};
+	}
+
+	/**
+	 * Sets the positions of the entries in order of document id, for a reader that can work them
+	 * out without sorting the list.
+	 *
+	 * @param order Positions of the entries, in order of document id
+	 */
+	void sortedByDoc(int[] order) {
+		byDoc = order;
+	}
+
+	/**
+	 * Returns the positions of the entries in order of document id.
+	 *
+	 * @return Positions of the entries, not to be changed
+	 */
+	int[] byDoc() {
+		int[] order = byDoc;
+		if (order == null){
+			order = byDoc = sortByDoc();
+		}
+		return order;
+	}
+
+	private int[] sortByDoc() {
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++){
+			keys[i] = ((long)docs[i] << 32) | i;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++){
+			order[i] = (int)keys[i];
+		}
+		return order;
+	}
+
+	/**
+	 * Removes the entry of a document, keeping the remaining entries in order.
+	 *
+	 * @param doc Document id
+	 * @return True if the document had an entry, false otherwise
+	 */
+	boolean remove(int doc) {
+		for (int i = 0; i < size; i++){
+			if (docs[i] == doc){
+				System.arraycopy(docs, i+1, docs, i, size-i-1);
+				System.arraycopy(freqs, i+1, freqs, i, size-i-1);
+				if (positions != null){
+					System.arraycopy(positions, i+1, positions, i, size-i-1);
+					positions[size-1] = null;
+				}
+				size--;
+				byDoc = null;
+						return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns this list in the same form as a list of Occurrences, e.g. "[(doc1.txt,3), (doc2.txt,1)]".
+	 *
+	 * @param index Index that supplies the document names
+	 * @return Printable form of this list
+	 */
+	String toString(IndexReader index) {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; i++){
+			if (i > 0){
+				sb.append(", ");
+			}
+			sb.append('(').append(index.documentName(docs[i])).append(',').append(freqs[i]).append(')');
+		}
+		return sb.append(']').toString();
+	}
+}
@@ -0,0 +1,47 @@
+package search;
+
+/**
+ * Reads the posting list of a keyword one entry at a time, in descending order of frequency,
+ * then ascending order of document id. Entries are decoded only as they are read, so a search
+ * that stops early pays for the head of a long list, not the whole of it. The frequency of any
+ * document can also be looked up, without moving the cursor.
+ *
+ */
+interface PostingsCursor {
+
+	/**
+	 * Returns the number of entries in the list.
+	 *
+	 * @return Number of entries
+	 */
+	int size();
+
+	/**
+	 * Moves to the next entry. Once this returns false, it keeps returning false.
+	 *
+	 * @return True if there was a next entry, false if the list is done
+	 */
+	boolean next();
+
+	/**
+	 * Returns the document id of the current entry. Only meaningful after next returned true.
+	 *
+	 * @return Document id
+	 */
+	int doc();
+
+	/**
+	 * Returns the frequency of the current entry. Only meaningful after next returned true.
+	 *
+	 * @return Frequency
+	 */
+	int freq();
+
+	/**
+	 * Looks up the frequency of a document in the list.
+	 *
+	 * @param doc Document id
+	 * @return Frequency of the keyword in the document, 0 if the document is not in the list
+	 */
+	int frequency(int doc);
+}
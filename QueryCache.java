@@ -0,0 +1,138 @@
+package search;
+
+import java.util.*;
+
+/**
+ * This class caches search results, keyed by the keywords of the query (in order) and the
+ * number of results asked for. Entries are evicted in least recently used order when the cache
+ * holds more than a given number of queries, or more than a given number of document names
+ * over all cached results. The cache counts hits and misses, and is cleared whenever the index
+ * changes.
+ *
+ */
+class QueryCache {
+
+	/**
+	 * Stands for a cached null result (no matching documents).
+	 */
+	static final ArrayList<String> NO_MATCH = new ArrayList<String>(0);
+
+	/**
+	 * Cached results in access order, least recently used first.
+	 */
+	private final LinkedHashMap<List<Object>,ArrayList<String>> results;
+
+	/**
+	 * Maximum number of queries, and maximum total number of document names, to keep.
+	 */
+	private final int maxQueries, maxDocuments;
+
+	/**
+	 * Total number of document names in the cached results.
+	 */
+	private int documents;
+
+	private long hits, misses;
+
+	/**
+	 * Number of times the cache has been cleared. A result computed before a clear is not cached.
+	 */
+	private long generation;
+
+	/**
+	 * Initializes an empty cache.
+	 *
+	 * @param maxQueries Maximum number of queries to keep
+	 * @param maxDocuments Maximum total number of document names to keep over all cached results
+	 */
+	QueryCache(int maxQueries, int maxDocuments) {
+		if (maxQueries < 1 || maxDocuments < 1){
+			throw new IllegalArgumentException("Cache limits must be at least 1");
+		}
+		this.maxQueries = maxQueries;
+		this.maxDocuments = maxDocuments;
+		results = new LinkedHashMap<List<Object>,ArrayList<String>>(16, 0.75f, true);
+	}
+
+	/**
+	 * Returns the key of a query.
+	 *
+	 * @param k Number of results asked for
+	 * @param keywords Keywords of the query
+	 * @return Key that is equal for equal queries
+	 */
+	static List<Object> key(int k, String[] keywords) {
+		ArrayList<Object> key = new ArrayList<Object>(keywords.length + 1);
+		key.add(k);
+		Collections.addAll(key, keywords);
+		return key;
+	}
+
+	/**
+	 * Looks up the result of a query, counting a hit or a miss.
+	 *
+	 * @param key Key of the query
+	 * @return Copy of the cached result, NO_MATCH if the cached result is null, null on a miss
+	 */
+	synchronized ArrayList<String> get(List<Object> key) {
+		ArrayList<String> result = results.get(key);
+		if (result == null){
+			misses++;
+			return null;
+		}
+		hits++;
+		return result == NO_MATCH ? NO_MATCH : new ArrayList<String>(result);
+	}
+
+	/**
+	 * Returns the current generation of the cache. Read it before running a query, and pass it
+	 * to put with the result.
+	 *
+	 * @return Number of times the cache has been cleared
+	 */
+	synchronized long generation() {
+		return generation;
+	}
+
+	/**
+	 * Caches the result of a query, evicting least recently used results as needed. The result
+	 * is dropped if the cache was cleared since the query started, since it may be stale.
+	 *
+	 * @param key Key of the query
+	 * @param result Result of the query, may be null
+	 * @param queryGeneration Generation of the cache when the query started
+	 */
+	synchronized void put(List<Object> key, ArrayList<String> result, long queryGeneration) {
+		if (queryGeneration != generation){
+			return;
+		}
+		ArrayList<String> value = result == null ? NO_MATCH : new ArrayList<String>(result);
+		ArrayList<String> old = results.put(key, value);
+		if (old != null){
+			documents -= old.size();
+		}
+		documents += value.size();
+		Iterator<ArrayList<String>> eldest = results.values().iterator();
+		while (results.size() > maxQueries || (documents > maxDocuments && results.size() > 1)){
+			documents -= eldest.next().size();
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Drops all cached results. Hit and miss counts are kept.
+	 */
+	synchronized void clear() {
+		generation++;
+		results.clear();
+		documents = 0;
+	}
+
+	synchronized long hits() {
+		return hits;
+	}
+
+	synchronized long misses() {
+		return misses;
+	}
+}
@@ -0,0 +1,132 @@
+package search;
+
+/**
+ * Search for "kw1 or kw2 or ... or kwn", ranked by tf-idf or by Okapi BM25 instead of by raw
+ * frequency, so that long documents do not win just for being long. Document frequencies are
+ * the lengths of the posting lists, and the per-document length norms are computed once per
+ * version of the index and cached in a Norms object, so a search only reads the keywords'
+ * posting lists.
+ *
+ */
+class RankedSearch {
+
+	/**
+	 * BM25 term frequency saturation.
+	 */
+	static final double K1 = 1.2;
+
+	/**
+	 * BM25 document length normalization.
+	 */
+	static final double B = 0.75;
+
+	private RankedSearch() {
+	}
+
+	/**
+	 * Document statistics of one version of an index.
+	 */
+	static class Norms {
+
+		/**
+		 * Index these statistics were computed from.
+		 */
+		final IndexReader index;
+
+		/**
+		 * Number of documents with at least one keyword, and their average length.
+		 */
+		final int documents;
+		final double averageLength;
+
+		/**
+		 * BM25 length norm of each document: K1 * (1 - B + B * length / average length).
+		 */
+		final float[] bm25;
+
+		/**
+		 * tf-idf length norm of each document: 1 / sqrt(length).
+		 */
+		final float[] tfidf;
+
+		/**
+		 * Computes the norms of all documents in an index.
+		 *
+		 * @param index Index
+		 */
+		Norms(IndexReader index) {
+			this.index = index;
+			int count = index.documentCount();
+			int[] lengths = new int[count];
+			long total = 0;
+			int live = 0;
+			for (int i = 0; i < count; i++){
+				lengths[i] = index.documentLength(i);
+				if (lengths[i] > 0){
+					total += lengths[i];
+					live++;
+				}
+			}
+			documents = live;
+			averageLength = live == 0 ? 1 : (double)total / live;
+			bm25 = new float[count];
+			tfidf = new float[count];
+			for (int i = 0; i < count; i++){
+				bm25[i] = (float)(K1 * (1 - B + B * lengths[i] / averageLength));
+				tfidf[i] = lengths[i] == 0 ? 0 : (float)(1 / Math.sqrt(lengths[i]));
+			}
+		}
+	}
+
+	/**
+	 * Returns the best k documents that contain any of the keywords. With BM25, a keyword that
+	 * occurs tf times in a document adds idf * tf * (K1 + 1) / (tf + norm) to its score, where
+	 * idf = ln(1 + (N - df + 0.5) / (df + 0.5)). With tf-idf it adds
+	 * (1 + ln tf) * ln(1 + N / df) * norm. Ties are broken as in top5search.
+	 *
+	 * @param norms Statistics of the index to search
+	 * @param bm25 True to rank by BM25, false to rank by tf-idf
+	 * @param keywords Keywords, in order of preference for breaking ties
+	 * @param k Maximum number of documents to return
+	 * @return Ids of the matching documents, best first; null if none of the keywords is in the index
+	 */
+	static int[] search(Norms norms, boolean bm25, String[] keywords, int k) {
+		PostingsCursor[] lists = new PostingsCursor[keywords.length];
+		int total = 0;
+		for (int i = 0; i < keywords.length; i++){
+			lists[i] = norms.index.cursor(keywords[i]);
+			if (lists[i] != null){
+				total += lists[i].size();
+			}
+		}
+		if (total == 0){
+			return null;
+		}
+		double n = norms.documents;
+		DocAccumulator acc = new DocAccumulator(total);
+		for (int i = 0; i < lists.length; i++){
+			PostingsCursor list = lists[i];
+			if (list == null){
+				continue;
+			}
+			double df = list.size();
+			if (bm25){
+				double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+				while (list.next()){
+					double tf = list.freq();
+					acc.add(list.doc(), idf * tf * (K1 + 1) / (tf + norms.bm25[list.doc()]), TopKSearch.tie(i, list.freq()));
+				}
+			}
+			else {
+				double idf = Math.log(1 + n / df);
+				while (list.next()){
+					double tf = list.freq();
+					acc.add(list.doc(), (1 + Math.log(tf)) * idf * norms.tfidf[list.doc()], TopKSearch.tie(i, list.freq()));
+				}
+			}
+		}
+		TopDocs top = new TopDocs(k, acc.size());
+		acc.collect(top);
+		return top.drain();
+	}
+}
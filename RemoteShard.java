@@ -0,0 +1,146 @@
+package search;
+
+import java.io.*;
+import java.net.*;
+
+/**
+ * A shard served by a ShardServer in another process, reached over a socket. Requests are
+ * sent one at a time over a single connection.
+ *
+ */
+class RemoteShard implements Shard {
+
+	private final Socket socket;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+
+	/**
+	 * Server process started by launch, null if the server was started some other way.
+	 */
+	private final Process process;
+
+	private RemoteShard(Socket socket, Process process)
+	throws IOException {
+		this.socket = socket;
+		this.process = process;
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	}
+
+	/**
+	 * Connects to a shard server on this machine.
+	 *
+	 * @param port Port the server listens on
+	 * @return Shard served by the server
+	 * @throws IOException If the server cannot be reached
+	 */
+	static RemoteShard connect(int port)
+	throws IOException {
+		return new RemoteShard(new Socket(InetAddress.getLoopbackAddress(), port), null);
+	}
+
+	/**
+	 * Starts a shard server in a new JVM, with the same class path and working directory as
+	 * this one, and connects to it. The server is shut down when the shard is closed.
+	 *
+	 * @return Shard served by the new process
+	 * @throws IOException If the process cannot be started
+	 */
+	static RemoteShard launch()
+	throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), 
+				ShardServer.class.getName())
+				.redirectError(ProcessBuilder.Redirect.INHERIT)
+				.start();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		String port = reader.readLine();
+		if (port == null){
+			process.destroy();
+			throw new IOException("Shard server did not start");
+		}
+		try {
+			return new RemoteShard(new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(port.trim())), process);
+		}
+		catch (IOException e){
+			process.destroy();
+			throw e;
+		}
+	}
+
+	public synchronized void loadNoiseWords(String noiseWordsFile)
+	throws IOException {
+		out.writeByte(ShardServer.NOISE);
+		out.writeUTF(noiseWordsFile);
+		reply();
+	}
+
+	public synchronized void addDocument(String docFile)
+	throws IOException {
+		out.writeByte(ShardServer.ADD);
+		out.writeUTF(docFile);
+		reply();
+	}
+
+	public synchronized boolean deleteDocument(String docFile)
+	throws IOException {
+		out.writeByte(ShardServer.DELETE);
+		out.writeUTF(docFile);
+		reply();
+		return in.readBoolean();
+	}
+
+	public synchronized ShardHits search(int k, String[] keywords)
+	throws IOException {
+		out.writeByte(ShardServer.SEARCH);
+		out.writeInt(k);
+		out.writeInt(keywords.length);
+		for (String keyword : keywords){
+			out.writeUTF(keyword);
+		}
+		reply();
+		return in.readBoolean() ? ShardHits.read(in) : null;
+	}
+
+	/**
+	 * Sends the request written so far, and reads the status of the reply.
+	 */
+	private void reply()
+	throws IOException {
+		out.flush();
+		byte status = in.readByte();
+		if (status == ShardServer.NOT_FOUND){
+			throw new FileNotFoundException(in.readUTF());
+		}
+		if (status != ShardServer.OK){
+			throw new IOException("Shard failed: " + in.readUTF());
+		}
+	}
+
+	public synchronized void close()
+	throws IOException {
+		try {
+			if (process != null){
+				out.writeByte(ShardServer.SHUTDOWN);
+				reply();
+			}
+			else {
+				out.writeByte(ShardServer.CLOSE);
+				out.flush();
+			}
+		}
+		finally {
+			socket.close();
+			if (process != null){
+				try {
+					process.waitFor();
+				}
+				catch (InterruptedException e){
+					Thread.currentThread().interrupt();
+					process.destroy();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package search;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Micro-benchmarks of the search engine over a corpus written by CorpusGenerator. Each benchmark
+ * is run for a few warm-up iterations, so the JIT compiler has settled, and then for a number of
+ * measured iterations; the mean time per operation and its spread over the iterations are
+ * printed, with the matching rate. Results of the operations are folded into a field the JIT
+ * cannot see through, so no work is optimized away. Run it as
+ * <pre>
+ *   java search.SearchBenchmark corpusDirectory [benchmark ...]
+ * </pre>
+ * where a benchmark is one of getKeyWord, loadKeyWords, mergeKeyWords, makeIndex, 
+ * makeIndexParallel, top5search and topKSearch; with none given, all of them run. Per-document 
+ * benchmarks use the first SAMPLE documents of the corpus.
+ *
+ */
+public class SearchBenchmark {
+
+	/**
+	 * Iterations run before measuring, and iterations measured.
+	 */
+	private static final int WARMUPS = 5, ITERATIONS = 10;
+
+	/**
+	 * Documents used by the per-document benchmarks.
+	 */
+	private static final int SAMPLE = 1000;
+
+	/**
+	 * Queries run by each iteration of the search benchmarks.
+	 */
+	private static final int QUERIES = 10000;
+
+	/**
+	 * Sink for results, so they count as used.
+	 */
+	static volatile long sink;
+
+	/**
+	 * One iteration of a benchmark.
+	 */
+	private interface Iteration {
+		/**
+		 * Runs the iteration.
+		 *
+		 * @return Number of operations done
+		 */
+		long run() throws IOException;
+	}
+
+	private final String docsFile, noiseWordsFile;
+	private final ArrayList<String> documents = new ArrayList<String>();
+
+	private SearchBenchmark(File corpus)
+	throws IOException {
+		docsFile = new File(corpus, "docs.txt").getPath();
+		noiseWordsFile = new File(corpus, "noise.txt").getPath();
+		Scanner sc = new Scanner(new File(docsFile));
+		while (sc.hasNext()){
+			documents.add(sc.next());
+		}
+		sc.close();
+	}
+
+	/**
+	 * Runs the benchmarks named on the command line.
+	 *
+	 * @param args Corpus directory, then the names of the benchmarks to run
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1){
+			System.err.println("Usage: java search.SearchBenchmark corpusDirectory [benchmark ...]");
+			return;
+		}
+		List<String> names = args.length > 1 ? Arrays.asList(args).subList(1, args.length) 
+				: Arrays.asList("getKeyWord", "loadKeyWords", "mergeKeyWords", "makeIndex", "makeIndexParallel", 
+						"top5search", "topKSearch");
+		try {
+			SearchBenchmark b = new SearchBenchmark(new File(args[0]));
+			System.out.println(b.documents.size() + " documents");
+			for (String name : names){
+				b.run(name);
+			}
+		}
+		catch (IOException e){
+			System.err.println("IO Error: " + e.getMessage());
+		}
+	}
+
+	private void run(String name)
+	throws IOException {
+		if (name.equals("getKeyWord")){
+			final LittleSearchEngine engine = engine();
+			final ArrayList<String> words = new ArrayList<String>();
+			for (String doc : sample()){
+				Scanner sc = new Scanner(new File(doc));
+				while (sc.hasNext()){
+					words.add(sc.next());
+				}
+				sc.close();
+			}
+			measure(name, "word", new Iteration() {
+				public long run() {
+					long h = 0;
+					for (String word : words){
+						String key = engine.getKeyWord(word);
+						h += key == null ? 0 : key.length();
+					}
+					sink += h;
+					return words.size();
+				}
+			});
+		}
+		else if (name.equals("loadKeyWords")){
+			final LittleSearchEngine engine = engine();
+			final List<String> sample = sample();
+			measure(name, "document", new Iteration() {
+				public long run() throws IOException {
+					long h = 0;
+					for (String doc : sample){
+						h += engine.loadKeyWords(doc).size();
+					}
+					sink += h;
+					return sample.size();
+				}
+			});
+		}
+		else if (name.equals("mergeKeyWords")){
+			final ArrayList<HashMap<String,Occurrence>> scanned = new ArrayList<HashMap<String,Occurrence>>();
+			LittleSearchEngine scanner = engine();
+			for (String doc : sample()){
+				scanned.add(scanner.loadKeyWords(doc));
+			}
+			measure(name, "document", new Iteration() {
+				public long run() throws IOException {
+					LittleSearchEngine engine = engine();
+					for (HashMap<String,Occurrence> kws : scanned){
+						engine.mergeKeyWords(kws);
+					}
+					sink += engine.reader().documentCount();
+					return scanned.size();
+				}
+			});
+		}
+		else if (name.equals("makeIndex") || name.equals("makeIndexParallel")){
+			final int threads = name.equals("makeIndex") ? 1 : Runtime.getRuntime().availableProcessors();
+			measure(name + " (" + threads + " threads)", "document", new Iteration() {
+				public long run() throws IOException {
+					LittleSearchEngine engine = new LittleSearchEngine();
+					engine.makeIndex(docsFile, noiseWordsFile, threads);
+					sink += engine.reader().documentCount();
+					return documents.size();
+				}
+			});
+		}
+		else if (name.equals("top5search") || name.equals("topKSearch")){
+			final LittleSearchEngine engine = new LittleSearchEngine();
+			engine.makeIndex(docsFile, noiseWordsFile, Runtime.getRuntime().availableProcessors());
+			final String[][] queries = queries(engine.reader(), name.equals("top5search") ? 2 : 3);
+			final boolean top5 = name.equals("top5search");
+			measure(name, "query", new Iteration() {
+				public long run() {
+					long h = 0;
+					for (String[] q : queries){
+						ArrayList<String> result = top5 ? engine.top5search(q[0], q[1]) : engine.topKSearch(10, q);
+						h += result == null ? 0 : result.size();
+					}
+					sink += h;
+					return queries.length;
+				}
+			});
+		}
+		else {
+			System.err.println("Unknown benchmark " + name);
+		}
+	}
+
+	/**
+	 * Returns an engine with the noise words loaded and no documents.
+	 */
+	private LittleSearchEngine engine()
+	throws IOException {
+		LittleSearchEngine engine = new LittleSearchEngine();
+		engine.loadNoiseWords(noiseWordsFile);
+		return engine;
+	}
+
+	private List<String> sample() {
+		return documents.subList(0, Math.min(SAMPLE, documents.size()));
+	}
+
+	/**
+	 * Draws queries from the keywords of an index, common keywords more often than rare ones,
+	 * the way users search. Keywords are picked with a probability proportional to the length of
+	 * their posting list. The queries are the same on every run.
+	 */
+	private static String[][] queries(IndexReader index, int keywords) {
+		ArrayList<String> all = new ArrayList<String>();
+		for (String keyword : index.keywords()){
+			all.add(keyword);
+		}
+		Collections.sort(all);
+		long[] cumulative = new long[all.size()];
+		long total = 0;
+		for (int i = 0; i < all.size(); i++){
+			total += index.cursor(all.get(i)).size();
+			cumulative[i] = total;
+		}
+		Random random = new Random(42);
+		String[][] queries = new String[QUERIES][keywords];
+		for (String[] q : queries){
+			for (int j = 0; j < keywords; j++){
+				int i = Arrays.binarySearch(cumulative, (long)(random.nextDouble() * total) + 1);
+				q[j] = all.get(i < 0 ? -i-1 : i);
+			}
+		}
+		return queries;
+	}
+
+	/**
+	 * Runs a benchmark, and prints the time per operation.
+	 */
+	private static void measure(String name, String unit, Iteration iteration)
+	throws IOException {
+		for (int i = 0; i < WARMUPS; i++){
+			iteration.run();
+		}
+		double[] perOp = new double[ITERATIONS];
+		double mean = 0;
+		for (int i = 0; i < ITERATIONS; i++){
+			long start = System.nanoTime();
+			long ops = iteration.run();
+			perOp[i] = (double)(System.nanoTime() - start) / ops;
+			mean += perOp[i] / ITERATIONS;
+		}
+		double variance = 0;
+		for (double t : perOp){
+			variance += (t - mean) * (t - mean) / ITERATIONS;
+		}
+		System.out.println(String.format("%-30s %12.1f ns/%-8s +- %5.1f%%  %12.0f ops/s", 
+				name, mean, unit, 100 * Math.sqrt(variance) / mean, 1e9 / mean));
+	}
+}
@@ -0,0 +1,384 @@
+package search;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.sun.net.httpserver.*;
+
+/**
+ * Serves searches of an index over HTTP, with the HTTP server built into the JDK. The index is
+ * built or opened once, and must not be changed while the server runs. Requests:
+ * <pre>
+ *   GET /search?q=kw1+kw2&amp;k=5    best k documents for the keywords, as in topKSearch (k defaults
+ *                                 to 5, and is at most MAX_K)
+ *   GET /postings?kw=kw&amp;k=100    first k documents the keyword occurs in, with frequencies,
+ *                                 highest first (k defaults to MAX_K, and is at most MAX_K)
+ * </pre>
+ * Answers are JSON, for instance
+ * <pre>
+ *   {"query":["kw1","kw2"],"results":["doc1.txt","doc2.txt"]}
+ *   {"keyword":"kw","postings":[{"document":"doc1.txt","frequency":12}]}
+ * </pre>
+ * with "results" or "postings" null if nothing matches. A bad request gets a 400 response, and a
+ * request that fails on the server a 500, both with an "error" message; the cause of a 500 is
+ * printed on the server's standard error, not sent to the client. Responses always carry their length,
+ * so clients can keep connections alive. The server listens on the loopback interface only.
+ * Run it from the command line as
+ * <pre>
+ *   java search.SearchServer port segmentFile [threads]
+ *   java search.SearchServer port docsFile noiseWordsFile [threads]
+ * </pre>
+ *
+ */
+public class SearchServer {
+
+	/**
+	 * Largest number of documents a search or a posting list request may ask for.
+	 */
+	public static final int MAX_K = 1000;
+
+	private final LittleSearchEngine engine;
+	private final HttpServer server;
+	private final ExecutorService pool;
+
+	/**
+	 * Initializes a server for an engine. The server does not accept requests until it is started.
+	 *
+	 * @param engine Engine to search
+	 * @param port Port to listen on, 0 for any free port
+	 * @param threads Number of threads handling requests
+	 * @throws IOException If the port cannot be opened
+	 */
+	public SearchServer(LittleSearchEngine engine, int port, int threads)
+	throws IOException {
+		if (threads < 1){
+			throw new IllegalArgumentException("threads must be at least 1: " + threads);
+		}
+		this.engine = engine;
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		// searches only use the CPU, so a thread per core keeps it busy without switching
+		pool = Executors.newFixedThreadPool(threads);
+		server.setExecutor(pool);
+		server.createContext("/search", new Handler() {
+			Response answer(HttpExchange exchange) {
+				return search(exchange);
+			}
+		});
+		server.createContext("/postings", new Handler() {
+			Response answer(HttpExchange exchange) {
+				return postings(exchange);
+			}
+		});
+	}
+
+	/**
+	 * Starts accepting requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 *
+	 * @return Port number
+	 */
+	public int port() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops the server, waiting at most the given number of seconds for requests in progress.
+	 *
+	 * @param delay Seconds to wait
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Answer to a request: an HTTP status, and a JSON body.
+	 */
+	private static class Response {
+		final int status;
+		final String body;
+
+		Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * Handles the requests to one path. A request that fails with an exception is answered
+	 * with a 500 response, and the exchange is closed whatever happens, so a client never
+	 * waits for an answer that will not come.
+	 */
+	private abstract static class Handler implements HttpHandler {
+
+		/**
+		 * Builds the answer to a request.
+		 *
+		 * @param exchange Request
+		 * @return Response to send
+		 */
+		abstract Response answer(HttpExchange exchange);
+
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				Response response;
+				try {
+					response = answer(exchange);
+				}
+				catch (RuntimeException e){
+					System.err.println("Error answering " + exchange.getRequestURI());
+					e.printStackTrace();
+					response = error(500, "Internal error");
+				}
+				respond(exchange, response);
+			}
+			finally {
+				// respond closes the exchange already; this is for errors that get past it
+				exchange.close();
+			}
+		}
+	}
+
+	private Response search(HttpExchange exchange) {
+		Map<String,String> params = parameters(exchange);
+		if (params == null){
+			return error(405, "Only GET is supported");
+		}
+		String q = params.get("q");
+		if (q == null || q.trim().isEmpty()){
+			return error(400, "Missing parameter q");
+		}
+		int k = k(params, 5);
+		if (k == -1){
+			return badK(params);
+		}
+		StringTokenizer st = new StringTokenizer(q);
+		String[] keywords = new String[st.countTokens()];
+		for (int i = 0; i < keywords.length; i++){
+			keywords[i] = st.nextToken();
+		}
+		ArrayList<String> results = engine.topKSearch(k, keywords);
+		StringBuilder json = new StringBuilder("{\"query\":");
+		array(json, Arrays.asList(keywords));
+		json.append(",\"results\":");
+		array(json, results);
+		return new Response(200, json.append('}').toString());
+	}
+
+	private Response postings(HttpExchange exchange) {
+		Map<String,String> params = parameters(exchange);
+		if (params == null){
+			return error(405, "Only GET is supported");
+		}
+		String word = params.get("kw");
+		if (word == null){
+			return error(400, "Missing parameter kw");
+		}
+		int k = k(params, MAX_K);
+		if (k == -1){
+			return badK(params);
+		}
+		// look the word up as a search would, so "Needle" finds the postings of "needle"
+		String keyword = engine.getKeyWord(word);
+		IndexReader index = engine.reader();
+		PostingsCursor cursor = keyword == null ? null : index.cursor(keyword);
+		StringBuilder json = new StringBuilder("{\"keyword\":");
+		string(json, keyword);
+		json.append(",\"postings\":");
+		if (cursor == null){
+			json.append("null");
+		}
+		else {
+			json.append('[');
+			// the cursor decodes only the entries that are sent, not the whole list
+			for (int i = 0; i < k && cursor.next(); i++){
+				if (i > 0){
+					json.append(',');
+				}
+				json.append("{\"document\":");
+				string(json, index.documentName(cursor.doc()));
+				json.append(",\"frequency\":").append(cursor.freq()).append('}');
+			}
+			json.append(']');
+		}
+		return new Response(200, json.append('}').toString());
+	}
+
+	/**
+	 * Reads the k parameter of a request.
+	 *
+	 * @param params Parameters of the request
+	 * @param defaultK Value if the request has no k
+	 * @return Value of k, -1 if it is not a number from 0 to MAX_K
+	 */
+	private static int k(Map<String,String> params, int defaultK) {
+		if (!params.containsKey("k")){
+			return defaultK;
+		}
+		int k;
+		try {
+			k = Integer.parseInt(params.get("k"));
+		}
+		catch (NumberFormatException e){
+			return -1;
+		}
+		return k < 0 || k > MAX_K ? -1 : k;
+	}
+
+	private static Response badK(Map<String,String> params) {
+		return error(400, "Parameter k must be a number from 0 to " + MAX_K + ": " + params.get("k"));
+	}
+
+	/**
+	 * Reads the query string of a GET request.
+	 *
+	 * @return Decoded parameters, null if the request is not a GET
+	 */
+	private static Map<String,String> parameters(HttpExchange exchange) {
+		if (!exchange.getRequestMethod().equals("GET")){
+			return null;
+		}
+		HashMap<String,String> params = new HashMap<String,String>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null){
+			return params;
+		}
+		for (String pair : query.split("&")){
+			int eq = pair.indexOf('=');
+			String name = eq == -1 ? pair : pair.substring(0, eq);
+			String value = eq == -1 ? "" : pair.substring(eq+1);
+			try {
+				params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+			}
+			catch (IllegalArgumentException e){
+				// badly escaped parameter, left out
+			}
+			catch (UnsupportedEncodingException e){
+				throw new IllegalStateException(e);
+			}
+		}
+		return params;
+	}
+
+	private static Response error(int status, String message) {
+		StringBuilder json = new StringBuilder("{\"error\":");
+		string(json, message);
+		return new Response(status, json.append('}').toString());
+	}
+
+	/**
+	 * Sends a response with its length, so the connection can be kept alive.
+	 */
+	private static void respond(HttpExchange exchange, Response response)
+	throws IOException {
+		try {
+			// drain the request, or the connection cannot be reused
+			InputStream in = exchange.getRequestBody();
+			byte[] skip = new byte[512];
+			while (in.read(skip) != -1){
+			}
+			byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(response.status, body.length);
+			exchange.getResponseBody().write(body);
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	private static void array(StringBuilder json, List<String> strings) {
+		if (strings == null){
+			json.append("null");
+			return;
+		}
+		json.append('[');
+		for (int i = 0; i < strings.size(); i++){
+			if (i > 0){
+				json.append(',');
+			}
+			string(json, strings.get(i));
+		}
+		json.append(']');
+	}
+
+	private static void string(StringBuilder json, String str) {
+		if (str == null){
+			json.append("null");
+			return;
+		}
+		json.append('"');
+		for (int i = 0; i < str.length(); i++){
+			char c = str.charAt(i);
+			if (c == '"' || c == '\\'){
+				json.append('\\').append(c);
+			}
+			else if (c < 0x20){
+				json.append(String.format("\\u%04x", (int)c));
+			}
+			else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+	/**
+	 * Builds or opens an index, and serves it until the process is stopped.
+	 *
+	 * @param args Port, then a segment file or a documents file and a noise words file,
+	 *        then optionally the number of threads
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2){
+			System.err.println("Usage: java search.SearchServer port segmentFile [threads]");
+			System.err.println("       java search.SearchServer port docsFile noiseWordsFile [threads]");
+			return;
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		try {
+			LittleSearchEngine engine;
+			if (args.length == 2 || (args.length == 3 && isNumber(args[2]))){
+				engine = LittleSearchEngine.openIndex(args[1]);
+				if (args.length == 3){
+					threads = Integer.parseInt(args[2]);
+				}
+			}
+			else {
+				engine = new LittleSearchEngine();
+				engine.makeIndex(args[1], args[2], threads);
+				if (args.length > 3){
+					threads = Integer.parseInt(args[3]);
+				}
+			}
+			SearchServer server = new SearchServer(engine, Integer.parseInt(args[0]), threads);
+			server.start();
+			System.out.println("Listening on http://localhost:" + server.port() + "/");
+		}
+		catch (FileNotFoundException e){
+			System.err.println("File not found: " + e.getMessage());
+		}
+		catch (IOException e){
+			System.err.println("IO Error: " + e.getMessage());
+		}
+	}
+
+	private static boolean isNumber(String str) {
+		try {
+			Integer.parseInt(str);
+			return true;
+		}
+		catch (NumberFormatException e){
+			return false;
+		}
+	}
+}
@@ -0,0 +1,553 @@
+package search;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class keeps the documents of a LittleSearchEngine in immutable segment files, in the
+ * manner of a log-structured merge tree. The engine indexes new documents in memory, and
+ * flushes them to a new small segment every flushEvery documents. A deleted document is only
+ * marked deleted in its segment. Segments are merged on a background thread with a tiered
+ * policy: a segment's tier is the number of times mergeFactor goes into its size in flushes,
+ * and whenever mergeFactor neighboring segments are in the same tier, they are merged into
+ * one segment of the next tier, without their deleted documents. So each document is
+ * rewritten about log(documents / flushEvery) / log(mergeFactor) times, a flush never writes
+ * more than flushEvery documents, and there are at most about mergeFactor segments per tier.
+ *
+ * Only neighboring segments are merged, so documents stay in the order they were added, and
+ * a SegmentedReader over the segments has the same posting lists as a single index.
+ *
+ * Segment files are named segment1.lse, segment2.lse, and so on, in the order they are
+ * written. The segments in use, and the documents deleted from each, are listed in a manifest
+ * file, MANIFEST, which is rewritten on every flush and merge and on close. The new manifest is
+ * written next to the old one and renamed over it, so the manifest always lists whole segments,
+ * and a segment file is only deleted once no manifest lists it. Opening a directory reloads
+ * the segments of its manifest, and deletes segment files left behind by a run that stopped
+ * before it could delete them. Deletions made after the last flush or merge are only recorded
+ * by close.
+ *
+ * The manifest is a file of big-endian ints and UTF strings:
+ * <pre>
+ *   magic, version, number of the next segment file, number of segments (S)
+ *   S times: file name of the segment, number of deleted documents (N), N document ids
+ * </pre>
+ *
+ * All methods but awaitMerges and close must be called with the engine's lock held; merges
+ * take it to swap their result in.
+ *
+ */
+class SegmentedIndex {
+
+	/**
+	 * First int of a manifest file.
+	 */
+	static final int MAGIC = 0x4C534D31; // "LSM1"
+
+	/**
+	 * Manifest format version written by this class.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Name of the manifest file in the directory.
+	 */
+	static final String MANIFEST = "MANIFEST";
+
+	/**
+	 * A segment file, and the documents deleted from it since it was written.
+	 */
+	private static class Segment {
+
+		final IndexSegment reader;
+
+		final File file;
+
+		/**
+		 * Deleted documents, null if there are none. Copied before it is changed once it has
+		 * been handed to a reader.
+		 */
+		BitSet deleted;
+		boolean deletedShared;
+
+		/**
+		 * Names of the documents, with the id of each document by name id.
+		 */
+		final TermTable names;
+		final int[] docs;
+
+		/**
+		 * True while the segment is being merged.
+		 */
+		boolean merging;
+
+		Segment(IndexSegment reader, File file) {
+			this.reader = reader;
+			this.file = file;
+			int count = reader.documentCount();
+			names = new TermTable(count);
+			docs = new int[count];
+			for (int doc = 0; doc < count; doc++){
+				String name = reader.documentName(doc);
+				if (name != null){
+					docs[names.add(name)] = doc;
+				}
+			}
+		}
+
+		/**
+		 * Returns the id of a document that is not deleted.
+		 *
+		 * @return Document id, -1 if there is no such document in this segment
+		 */
+		int find(String name) {
+			int id = names.find(name);
+			if (id == -1 || deleted != null && deleted.get(docs[id])){
+				return -1;
+			}
+			return docs[id];
+		}
+
+		void delete(int doc) {
+			if (deleted == null){
+				deleted = new BitSet(reader.documentCount());
+			}
+			else if (deletedShared){
+				deleted = (BitSet)deleted.clone();
+			}
+			deletedShared = false;
+			deleted.set(doc);
+		}
+
+		BitSet deleted() {
+			deletedShared = true;
+			return deleted;
+		}
+	}
+
+	/**
+	 * Engine whose documents these are.
+	 */
+	private final LittleSearchEngine engine;
+
+	/**
+	 * Directory of the segment files.
+	 */
+	private final File directory;
+
+	/**
+	 * Number of documents the engine indexes in memory before they are flushed to a segment,
+	 * and number of segments of a tier that are merged together.
+	 */
+	final int flushEvery, mergeFactor;
+
+	/**
+	 * Segments, in the order their documents were added.
+	 */
+	private final ArrayList<Segment> segments = new ArrayList<Segment>();
+
+	/**
+	 * Thread that merges segments, one merge at a time, and the number of merges not done yet.
+	 */
+	private final ExecutorService merger;
+	private int pendingMerges;
+
+	/**
+	 * First failure of a background merge, reported by awaitMerges.
+	 */
+	private IOException failure;
+
+	/**
+	 * Number of the next segment file.
+	 */
+	private int nextFile = 1;
+
+	/**
+	 * Segment files no manifest lists any more that could not be deleted yet.
+	 */
+	private final ArrayList<File> obsolete = new ArrayList<File>();
+
+	/**
+	 * Opens the segments of a directory, or starts an index with no segments if the directory
+	 * has no manifest. Segment files the manifest does not list are deleted.
+	 *
+	 * @param engine Engine whose documents these are
+	 * @param directory Directory for the segment files
+	 * @param flushEvery Number of documents in a flushed segment
+	 * @param mergeFactor Number of segments of a tier merged together
+	 * @throws IOException If the manifest or a segment it lists cannot be read
+	 */
+	SegmentedIndex(LittleSearchEngine engine, File directory, int flushEvery, int mergeFactor)
+	throws IOException {
+		this.engine = engine;
+		this.directory = directory;
+		this.flushEvery = flushEvery;
+		this.mergeFactor = mergeFactor;
+		readManifest();
+		HashSet<String> listed = new HashSet<String>();
+		for (Segment segment : segments){
+			listed.add(segment.file.getName());
+		}
+		File[] files = directory.listFiles();
+		if (files == null){
+			throw new IOException("Cannot list directory " + directory);
+		}
+		for (File file : files){
+			String name = file.getName();
+			if ((name.matches("segment[0-9]+\\.lse") && !listed.contains(name)) || name.equals(MANIFEST + ".tmp")){
+				obsolete.add(file);
+			}
+		}
+		deleteObsolete();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, 
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "segment-merger");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		// an engine that stops changing does not keep a thread
+		pool.allowCoreThreadTimeOut(true);
+		merger = pool;
+	}
+
+	/**
+	 * Returns the number of segments.
+	 *
+	 * @return Number of segments
+	 */
+	int size() {
+		return segments.size();
+	}
+
+	/**
+	 * Writes documents indexed in memory to a new segment, after all others, and starts a merge
+	 * if one is due. Documents without a name are left out.
+	 *
+	 * @param buffer Documents to write
+	 * @throws IOException If the segment cannot be written
+	 */
+	void flush(IndexReader buffer)
+	throws IOException {
+		SegmentedReader compacted = new SegmentedReader(new IndexReader[] { buffer }, new BitSet[1], true);
+		if (compacted.documentCount() == 0){
+			return;
+		}
+		segments.add(write(compacted, nextFile()));
+		writeManifest();
+		maybeMerge();
+	}
+
+	/**
+	 * Marks a document deleted in the newest segment that has it.
+	 *
+	 * @param name Document name
+	 * @return True if a segment had the document, false otherwise
+	 */
+	boolean delete(String name) {
+		for (int i = segments.size()-1; i >= 0; i--){
+			Segment segment = segments.get(i);
+			int doc = segment.find(name);
+			if (doc != -1){
+				segment.delete(doc);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a reader over all segments, followed by the documents still in memory. The
+	 * reader does not change as segments are flushed, merged, or have documents deleted.
+	 *
+	 * @param buffer Snapshot of the documents in memory
+	 * @return Reader over the whole index
+	 */
+	IndexReader reader(IndexReader buffer) {
+		int n = segments.size();
+		IndexReader[] parts = new IndexReader[n+1];
+		BitSet[] deleted = new BitSet[n+1];
+		for (int i = 0; i < n; i++){
+			parts[i] = segments.get(i).reader;
+			deleted[i] = segments.get(i).deleted();
+		}
+		parts[n] = buffer;
+		return new SegmentedReader(parts, deleted, false);
+	}
+
+	/**
+	 * Waits until all merges started so far, and the merges they lead to, are done.
+	 *
+	 * @throws IOException If a merge failed
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 */
+	void awaitMerges()
+	throws IOException, InterruptedException {
+		synchronized (engine){
+			while (pendingMerges > 0){
+				engine.wait();
+			}
+			if (failure != null){
+				IOException e = failure;
+				failure = null;
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Waits for the merges in progress, writes the manifest, and stops the merge thread. The
+	 * segment files stay in the directory, and can be opened again.
+	 *
+	 * @throws IOException If a merge failed, the manifest cannot be written, or a segment file
+	 *         no longer in use cannot be deleted
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 */
+	void close()
+	throws IOException, InterruptedException {
+		try {
+			awaitMerges();
+		}
+		finally {
+			merger.shutdown();
+		}
+		synchronized (engine){
+			writeManifest();
+			if (!obsolete.isEmpty()){
+				throw new IOException("Cannot delete " + obsolete);
+			}
+		}
+	}
+
+	/**
+	 * Returns the tier of a segment.
+	 */
+	private int tier(Segment segment) {
+		int tier = 0;
+		for (long size = (long)flushEvery * mergeFactor; segment.reader.documentCount() >= size; size *= mergeFactor){
+			tier++;
+		}
+		return tier;
+	}
+
+	/**
+	 * Starts merging each run of mergeFactor neighboring segments of the same tier that are
+	 * not being merged already.
+	 */
+	private void maybeMerge() {
+		int run = 0;
+		for (int i = 0; i < segments.size(); i++){
+			Segment segment = segments.get(i);
+			if (segment.merging){
+				run = 0;
+				continue;
+			}
+			if (run > 0 && tier(segments.get(i-1)) != tier(segment)){
+				run = 0;
+			}
+			run++;
+			if (run == mergeFactor){
+				List<Segment> sources = new ArrayList<Segment>(segments.subList(i - run + 1, i + 1));
+				merge(sources);
+				run = 0;
+			}
+		}
+	}
+
+	/**
+	 * Merges segments on the background thread.
+	 */
+	private void merge(final List<Segment> sources) {
+		int n = sources.size();
+		IndexReader[] parts = new IndexReader[n];
+		final BitSet[] deleted = new BitSet[n];
+		for (int i = 0; i < n; i++){
+			Segment segment = sources.get(i);
+			segment.merging = true;
+			parts[i] = segment.reader;
+			deleted[i] = segment.deleted();
+		}
+		final SegmentedReader compacted = new SegmentedReader(parts, deleted, true);
+		final File file = nextFile();
+		pendingMerges++;
+		merger.execute(new Runnable() {
+			public void run() {
+				Segment merged = null;
+				IOException error = null;
+				try {
+					merged = write(compacted, file);
+				}
+				catch (IOException e){
+					error = e;
+				}
+				synchronized (engine){
+					try {
+						if (error == null){
+							error = replace(sources, deleted, compacted, merged);
+						}
+						if (error != null){
+							for (Segment segment : sources){
+								segment.merging = false;
+							}
+							if (failure == null){
+								failure = error;
+							}
+						}
+					}
+					finally {
+						pendingMerges--;
+						engine.notifyAll();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Swaps a merged segment in for the segments it was merged from. Documents deleted from
+	 * those segments while they were being merged are deleted from the merged segment.
+	 *
+	 * @return Null, or the error if the new manifest cannot be written; the merged segment is
+	 *         then dropped, and the segments it was merged from kept
+	 */
+	private IOException replace(List<Segment> sources, BitSet[] deleted, SegmentedReader compacted, Segment merged) {
+		for (int i = 0; i < sources.size(); i++){
+			BitSet now = sources.get(i).deleted;
+			for (int doc = now == null ? -1 : now.nextSetBit(0); doc >= 0; doc = now.nextSetBit(doc+1)){
+				if (deleted[i] == null || !deleted[i].get(doc)){
+					merged.delete(compacted.number(i, doc));
+				}
+			}
+		}
+		int at = segments.indexOf(sources.get(0));
+		segments.subList(at, at + sources.size()).clear();
+		segments.add(at, merged);
+		try {
+			writeManifest();
+		}
+		catch (IOException e){
+			segments.remove(at);
+			segments.addAll(at, sources);
+			obsolete.add(merged.file);
+			deleteObsolete();
+			return e;
+		}
+		for (Segment segment : sources){
+			// searches that still read the old segments keep them mapped
+			obsolete.add(segment.file);
+		}
+		deleteObsolete();
+		engine.segmentsChanged();
+		maybeMerge();
+		return null;
+	}
+
+	/**
+	 * Returns the file for the next segment.
+	 */
+	private File nextFile() {
+		return new File(directory, "segment" + nextFile++ + ".lse");
+	}
+
+	/**
+	 * Writes an index to a new segment file, and opens it.
+	 */
+	private Segment write(IndexReader index, File file)
+	throws IOException {
+		try {
+			IndexSegment.write(file.getPath(), index);
+			return new Segment(IndexSegment.open(file.getPath()), file);
+		}
+		catch (IOException e){
+			if (file.exists() && !file.delete()){
+				synchronized (engine){
+					obsolete.add(file);
+				}
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Deletes the segment files no manifest lists any more. Files that cannot be deleted, for
+	 * instance because a search still maps them on a system that does not allow that, are kept
+	 * for the next try.
+	 */
+	private void deleteObsolete() {
+		for (Iterator<File> i = obsolete.iterator(); i.hasNext(); ){
+			File file = i.next();
+			if (file.delete() || !file.exists()){
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Writes the manifest of the current segments, and then deletes the files no manifest
+	 * lists any more.
+	 */
+	private void writeManifest()
+	throws IOException {
+		File tmp = new File(directory, MANIFEST + ".tmp");
+		FileOutputStream file = new FileOutputStream(tmp);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(nextFile);
+			out.writeInt(segments.size());
+			for (Segment segment : segments){
+				out.writeUTF(segment.file.getName());
+				BitSet deleted = segment.deleted;
+				out.writeInt(deleted == null ? 0 : deleted.cardinality());
+				for (int doc = deleted == null ? -1 : deleted.nextSetBit(0); doc >= 0; doc = deleted.nextSetBit(doc+1)){
+					out.writeInt(doc);
+				}
+			}
+			out.flush();
+			file.getFD().sync();
+		}
+		finally {
+			file.close();
+		}
+		Files.move(tmp.toPath(), new File(directory, MANIFEST).toPath(), 
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		deleteObsolete();
+	}
+
+	/**
+	 * Opens the segments listed in the manifest, if there is one.
+	 */
+	private void readManifest()
+	throws IOException {
+		File manifest = new File(directory, MANIFEST);
+		if (!manifest.exists()){
+			return;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)));
+		try {
+			if (in.readInt() != MAGIC){
+				throw new IOException("Not a segment manifest: " + manifest);
+			}
+			int version = in.readInt();
+			if (version != VERSION){
+				throw new IOException("Unsupported segment manifest version " + version);
+			}
+			nextFile = in.readInt();
+			int count = in.readInt();
+			for (int i = 0; i < count; i++){
+				File file = new File(directory, in.readUTF());
+				Segment segment = new Segment(IndexSegment.open(file.getPath()), file);
+				for (int n = in.readInt(); n > 0; n--){
+					segment.delete(in.readInt());
+				}
+				segments.add(segment);
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,524 @@
+package search;
+
+import java.util.*;
+
+/**
+ * This class reads several indexes, the segments of a SegmentedIndex, as if they were a single
+ * index. Documents are numbered across the segments in order: all documents of the first
+ * segment, then all of the second, and so on. A posting list is the merge of the segments' lists
+ * for the keyword, in descending order of frequency and ascending order of the numbers, so
+ * searches see exactly the lists they would see in one index with the documents added in the
+ * same order. Cursors merge the lists as they are read, with a heap over the segments' own
+ * cursors, and a cursor in order of document id reads the segments' lists one after the other.
+ *
+ * Documents can be marked deleted in a segment without changing it. A deleted document keeps
+ * its number, with no name and no keywords; a compacted reader drops deleted documents and
+ * numbers the rest without gaps, which is how merged segments are written.
+ *
+ */
+class SegmentedReader implements IndexReader {
+
+	/**
+	 * Segments, in order.
+	 */
+	private final IndexReader[] parts;
+
+	/**
+	 * Documents marked deleted in each segment, null if there are none. The sets are not
+	 * changed once they are part of a reader.
+	 */
+	private final BitSet[] deleted;
+
+	/**
+	 * Number of the first document of each segment, and the number of documents at the end.
+	 * Null for a compacted reader.
+	 */
+	private final int[] bases;
+
+	/**
+	 * For a compacted reader, the number of each document of each segment (-1 if it is
+	 * dropped), and the segment and the document within it of each number. Null otherwise.
+	 */
+	private final int[][] numbers;
+	private final int[] partOf, docOf;
+
+	/**
+	 * Documents of each segment left out of the posting lists, null if there are none.
+	 */
+	private final BitSet[] droppedDocs;
+
+	/**
+	 * Number of documents.
+	 */
+	private final int count;
+
+	/**
+	 * Initializes a reader over segments.
+	 *
+	 * @param parts Segments, in order
+	 * @param deleted Documents deleted in each segment, null entries for none
+	 * @param compact True to drop deleted documents, and documents without a name, and
+	 *        number the others without gaps
+	 */
+	SegmentedReader(IndexReader[] parts, BitSet[] deleted, boolean compact) {
+		this.parts = parts;
+		this.deleted = deleted;
+		if (!compact){
+			bases = new int[parts.length + 1];
+			for (int p = 0; p < parts.length; p++){
+				bases[p+1] = bases[p] + parts[p].documentCount();
+			}
+			count = bases[parts.length];
+			numbers = null;
+			partOf = null;
+			docOf = null;
+			droppedDocs = deleted;
+			return;
+		}
+		bases = null;
+		numbers = new int[parts.length][];
+		droppedDocs = new BitSet[parts.length];
+		int n = 0;
+		for (int p = 0; p < parts.length; p++){
+			numbers[p] = new int[parts[p].documentCount()];
+			for (int doc = 0; doc < numbers[p].length; doc++){
+				boolean dropped = isDeleted(p, doc) || parts[p].documentName(doc) == null;
+				numbers[p][doc] = dropped ? -1 : n++;
+				if (dropped){
+					if (droppedDocs[p] == null){
+						droppedDocs[p] = new BitSet(numbers[p].length);
+					}
+					droppedDocs[p].set(doc);
+				}
+			}
+		}
+		count = n;
+		partOf = new int[n];
+		docOf = new int[n];
+		for (int p = 0; p < parts.length; p++){
+			for (int doc = 0; doc < numbers[p].length; doc++){
+				if (numbers[p][doc] != -1){
+					partOf[numbers[p][doc]] = p;
+					docOf[numbers[p][doc]] = doc;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of a document of a segment in this reader.
+	 *
+	 * @param part Position of the segment
+	 * @param doc Document id in the segment
+	 * @return Number of the document, -1 if it is deleted and this reader is compacted
+	 */
+	int number(int part, int doc) {
+		return numbers != null ? numbers[part][doc] : bases[part] + doc;
+	}
+
+	/**
+	 * Tells whether a document of a segment is left out of the posting lists of this reader.
+	 */
+	private boolean dropped(int part, int doc) {
+		return droppedDocs[part] != null && droppedDocs[part].get(doc);
+	}
+
+	private boolean isDeleted(int part, int doc) {
+		return deleted[part] != null && deleted[part].get(doc);
+	}
+
+	/**
+	 * Returns the position of the segment that holds a document.
+	 */
+	private int part(int doc) {
+		if (partOf != null){
+			return partOf[doc];
+		}
+		// last segment whose first number is <= doc
+		int left = 0;
+		int right = parts.length - 1;
+		while (left < right){
+			int mid = (left+right+1) >>> 1;
+			if (bases[mid] <= doc){
+				left = mid;
+			}
+			else {
+				right = mid - 1;
+			}
+		}
+		return left;
+	}
+
+	private int local(int part, int doc) {
+		return docOf != null ? docOf[doc] : doc - bases[part];
+	}
+
+	public Postings postings(String keyword) {
+		Postings[] lists = new Postings[parts.length];
+		PostingsCursor[] cursors = new PostingsCursor[parts.length];
+		int total = 0;
+		boolean positional = false;
+		for (int p = 0; p < parts.length; p++){
+			lists[p] = parts[p].postings(keyword);
+			if (lists[p] != null){
+				cursors[p] = lists[p].cursor();
+				total += lists[p].size;
+				positional |= lists[p].positions != null;
+			}
+		}
+		int[] docs = new int[Math.max(4, total)];
+		int[] freqs = new int[docs.length];
+		byte[][] positions = positional ? new byte[docs.length][] : null;
+		// place in the merged list of each entry of each segment's list, -1 if it is dropped
+		int[][] places = new int[parts.length][];
+		for (int p = 0; p < parts.length; p++){
+			if (lists[p] != null){
+				places[p] = new int[lists[p].size];
+				Arrays.fill(places[p], -1);
+			}
+		}
+		Merge merge = new Merge(keyword, cursors);
+		int size = 0;
+		while (merge.next()){
+			int p = merge.part;
+			int i = merge.read[p] - 1;
+			docs[size] = merge.doc();
+			freqs[size] = merge.freq();
+			if (positional && lists[p].positions != null){
+				positions[size] = lists[p].positions[i];
+			}
+			places[p][i] = size++;
+		}
+		if (size == 0){
+			return null;
+		}
+		Postings merged = new Postings(docs, freqs, size);
+		merged.positions = positions;
+		// the numbers of a segment all come before those of the next one, so the segments'
+		// lists in order of document id, one after the other, are the merged list in that order
+		int[] order = new int[size];
+		int n = 0;
+		for (int p = 0; p < parts.length; p++){
+			if (lists[p] != null){
+				for (int i : lists[p].byDoc()){
+					if (places[p][i] != -1){
+						order[n++] = places[p][i];
+					}
+				}
+			}
+		}
+		merged.sortedByDoc(order);
+		return merged;
+	}
+
+	public PostingsCursor cursor(String keyword) {
+		PostingsCursor[] lists = new PostingsCursor[parts.length];
+		boolean found = false;
+		for (int p = 0; p < parts.length; p++){
+			lists[p] = parts[p].cursor(keyword);
+			found |= lists[p] != null;
+		}
+		return found ? new Merge(keyword, lists) : null;
+	}
+
+	public DocCursor docPostings(String keyword) {
+		DocCursor[] lists = new DocCursor[parts.length];
+		boolean found = false;
+		for (int p = 0; p < parts.length; p++){
+			lists[p] = parts[p].docPostings(keyword);
+			found |= lists[p] != null;
+		}
+		return found ? new Concatenation(lists) : null;
+	}
+
+	/**
+	 * Merges cursors over the segments' lists of a keyword into one list in descending order of
+	 * frequency, then ascending order of number. A heap holds the segments whose lists have
+	 * entries left, keyed on the frequency at the head of the list, then the position of the
+	 * segment, whose numbers all come before those of later segments. Entries of dropped
+	 * documents are skipped.
+	 */
+	private class Merge implements PostingsCursor {
+
+		private final String keyword;
+
+		/**
+		 * Cursor over each segment's list, null if the keyword is not in the segment.
+		 */
+		private final PostingsCursor[] lists;
+
+		/**
+		 * Number of entries read from each segment's list, dropped ones included.
+		 */
+		private final int[] read;
+
+		/**
+		 * Heap of (Integer.MAX_VALUE - frequency) << 32 | segment, smallest first.
+		 */
+		private final long[] heap;
+		private int heapSize;
+
+		/**
+		 * Segment of the current entry, -1 before the first entry and after the last.
+		 */
+		private int part = -1;
+
+		/**
+		 * Number of entries left after dropping documents, -1 until it is counted.
+		 */
+		private int size = -1;
+
+		Merge(String keyword, PostingsCursor[] lists) {
+			this.keyword = keyword;
+			this.lists = lists;
+			read = new int[lists.length];
+			heap = new long[lists.length];
+			for (int p = 0; p < lists.length; p++){
+				if (lists[p] != null && advance(p)){
+					push(p);
+				}
+			}
+		}
+
+		/**
+		 * Moves a segment's cursor to its next entry that is not dropped.
+		 */
+		private boolean advance(int p) {
+			while (lists[p].next()){
+				read[p]++;
+				if (!dropped(p, lists[p].doc())){
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void push(int p) {
+			long key = ((long)(Integer.MAX_VALUE - lists[p].freq()) << 32) | p;
+			int i = heapSize++;
+			while (i > 0 && heap[(i-1)/2] > key){
+				heap[i] = heap[(i-1)/2];
+				i = (i-1)/2;
+			}
+			heap[i] = key;
+		}
+
+		private int pop() {
+			int p = (int)heap[0];
+			long key = heap[--heapSize];
+			int i = 0;
+			while (2*i + 1 < heapSize){
+				int child = 2*i + 1;
+				if (child+1 < heapSize && heap[child+1] < heap[child]){
+					child++;
+				}
+				if (heap[child] >= key){
+					break;
+				}
+				heap[i] = heap[child];
+				i = child;
+			}
+			heap[i] = key;
+			return p;
+		}
+
+		public int size() {
+			if (size == -1){
+				int n = 0;
+				for (int p = 0; p < lists.length; p++){
+					if (lists[p] != null){
+						n += lists[p].size();
+						if (droppedDocs[p] != null){
+							n -= countIn(parts[p].docPostings(keyword), droppedDocs[p]);
+						}
+					}
+				}
+				size = n;
+			}
+			return size;
+		}
+
+		public boolean next() {
+			if (part != -1 && advance(part)){
+				push(part);
+			}
+			part = heapSize == 0 ? -1 : pop();
+			return part != -1;
+		}
+
+		public int doc() {
+			return number(part, lists[part].doc());
+		}
+
+		public int freq() {
+			return lists[part].freq();
+		}
+
+		public int frequency(int doc) {
+			int p = part(doc);
+			int local = local(p, doc);
+			return lists[p] == null || dropped(p, local) ? 0 : lists[p].frequency(local);
+		}
+	}
+
+	/**
+	 * Returns the number of documents of a set that are in a list.
+	 */
+	private static int countIn(DocCursor list, BitSet docs) {
+		int n = 0;
+		int doc = list.nextDoc();
+		while (doc != DocCursor.NO_MORE_DOCS){
+			int next = docs.nextSetBit(doc);
+			if (next == -1){
+				break;
+			}
+			if (next == doc){
+				n++;
+				doc = list.nextDoc();
+			}
+			else {
+				doc = list.advance(next);
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Reads cursors over the segments' lists of a keyword in order of document id, one segment
+	 * after the other, numbering the documents and skipping dropped ones.
+	 */
+	private class Concatenation implements DocCursor {
+
+		/**
+		 * Cursor over each segment's list, null if the keyword is not in the segment.
+		 */
+		private final DocCursor[] lists;
+
+		private final int cost;
+
+		/**
+		 * Segment being read, and the current document number.
+		 */
+		private int part, doc = -1;
+
+		Concatenation(DocCursor[] lists) {
+			this.lists = lists;
+			int n = 0;
+			for (DocCursor list : lists){
+				n += list == null ? 0 : list.cost();
+			}
+			cost = n;
+		}
+
+		public int cost() {
+			return cost;
+		}
+
+		public int doc() {
+			return doc;
+		}
+
+		public int freq() {
+			return lists[part].freq();
+		}
+
+		public int nextDoc() {
+			for (; part < lists.length; part++){
+				if (lists[part] != null && next(lists[part].nextDoc())){
+					return doc;
+				}
+			}
+			return doc = NO_MORE_DOCS;
+		}
+
+		public int advance(int target) {
+			if (doc >= target){
+				return doc;
+			}
+			if (target >= count){
+				part = lists.length;
+				return doc = NO_MORE_DOCS;
+			}
+			// segments before the target's own cannot hold it, or anything after it
+			int p = part(target);
+			if (p >= part){
+				part = p;
+				if (lists[part] != null && next(lists[part].advance(local(part, target)))){
+					return doc;
+				}
+				part++;
+			}
+			return nextDoc();
+		}
+
+		/**
+		 * Moves on from a document of the current segment to the first one that is not
+		 * dropped, and sets the current number.
+		 *
+		 * @return False if the segment's list has no such document
+		 */
+		private boolean next(int local) {
+			while (local != NO_MORE_DOCS && dropped(part, local)){
+				local = lists[part].nextDoc();
+			}
+			if (local == NO_MORE_DOCS){
+				return false;
+			}
+			doc = number(part, local);
+			return true;
+		}
+	}
+
+	public Iterable<String> keywords() {
+		HashSet<String> keywords = new HashSet<String>();
+		for (int p = 0; p < parts.length; p++){
+			if (deleted[p] == null){
+				for (String keyword : parts[p].keywords()){
+					keywords.add(keyword);
+				}
+			}
+		}
+		// a keyword of a segment with deleted documents may only be in those documents
+		for (int p = 0; p < parts.length; p++){
+			if (deleted[p] != null){
+				for (String keyword : parts[p].keywords()){
+					if (!keywords.contains(keyword) && hasLiveDocument(p, parts[p].cursor(keyword))){
+						keywords.add(keyword);
+					}
+				}
+			}
+		}
+		return keywords;
+	}
+
+	private boolean hasLiveDocument(int part, PostingsCursor list) {
+		while (list.next()){
+			if (!dropped(part, list.doc())){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public String documentName(int doc) {
+		int p = part(doc);
+		int local = local(p, doc);
+		return isDeleted(p, local) ? null : parts[p].documentName(local);
+	}
+
+	public int documentLength(int doc) {
+		int p = part(doc);
+		int local = local(p, doc);
+		return isDeleted(p, local) ? 0 : parts[p].documentLength(local);
+	}
+
+	public int documentWords(int doc) {
+		int p = part(doc);
+		int local = local(p, doc);
+		return isDeleted(p, local) ? 0 : parts[p].documentWords(local);
+	}
+
+	public int documentCount() {
+		return count;
+	}
+}
@@ -0,0 +1,51 @@
+package search;
+
+import java.io.*;
+
+/**
+ * One partition of the documents of a ShardedEngine. A shard is a LittleSearchEngine of its
+ * own, either in the same JVM (LocalShard) or in another process reached over a socket
+ * (RemoteShard).
+ *
+ */
+interface Shard extends Closeable {
+
+	/**
+	 * Loads noise words.
+	 *
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @throws IOException If the file is not found, or the shard cannot be reached
+	 */
+	void loadNoiseWords(String noiseWordsFile)
+	throws IOException;
+
+	/**
+	 * Adds a document to the shard, or re-indexes it if it is already there.
+	 *
+	 * @param docFile Name of the document file
+	 * @throws IOException If the file is not found, or the shard cannot be reached
+	 */
+	void addDocument(String docFile)
+	throws IOException;
+
+	/**
+	 * Deletes a document from the shard.
+	 *
+	 * @param docFile Name of the document file
+	 * @return True if the document was in the shard
+	 * @throws IOException If the shard cannot be reached
+	 */
+	boolean deleteDocument(String docFile)
+	throws IOException;
+
+	/**
+	 * Searches the shard as in LittleSearchEngine.topKSearch.
+	 *
+	 * @param k Maximum number of documents
+	 * @param keywords Keywords, in order of preference for breaking ties
+	 * @return Best documents of the shard, null if none of the keywords is in the shard
+	 * @throws IOException If the shard cannot be reached
+	 */
+	ShardHits search(int k, String[] keywords)
+	throws IOException;
+}
@@ -0,0 +1,123 @@
+package search;
+
+import java.io.*;
+
+/**
+ * This class is the answer of one shard to a search: its best documents, with what the
+ * coordinator of a ShardedEngine needs to rank them against the documents of the other shards.
+ * That is the score of each document, and its tie key in a form that does not depend on the
+ * shard's own document ids: the first keyword of the search the document occurs in, and its
+ * frequency there. Since posting lists keep documents of equal frequency in order of id, a
+ * document's place in that keyword's posting list of the unsharded index follows from its
+ * frequency and its id in the whole index, which only the coordinator knows.
+ *
+ */
+class ShardHits {
+
+	/**
+	 * Names of the documents, best first.
+	 */
+	final String[] names;
+
+	/**
+	 * Score of the document at the same index in names: the sum of the keywords' frequencies.
+	 */
+	final int[] scores;
+
+	/**
+	 * Index of the first keyword of the search that occurs in the document.
+	 */
+	final int[] keywords;
+
+	/**
+	 * Frequency of that keyword in the document.
+	 */
+	final int[] frequencies;
+
+	private ShardHits(int size) {
+		names = new String[size];
+		scores = new int[size];
+		keywords = new int[size];
+		frequencies = new int[size];
+	}
+
+	/**
+	 * Returns the number of documents.
+	 *
+	 * @return Number of documents
+	 */
+	int size() {
+		return names.length;
+	}
+
+	/**
+	 * Scores the documents found by a search of a shard's index.
+	 *
+	 * @param index Index of the shard
+	 * @param keywords Keywords of the search
+	 * @param docs Ids of the best documents, best first; null if none of the keywords is in the index
+	 * @return Documents with their scores and tie keys, null if docs is null
+	 */
+	static ShardHits of(IndexReader index, String[] keywords, int[] docs) {
+		if (docs == null){
+			return null;
+		}
+		PostingsCursor[] lists = new PostingsCursor[keywords.length];
+		for (int i = 0; i < keywords.length; i++){
+			lists[i] = index.cursor(keywords[i]);
+		}
+		ShardHits hits = new ShardHits(docs.length);
+		for (int d = 0; d < docs.length; d++){
+			hits.names[d] = index.documentName(docs[d]);
+			hits.keywords[d] = -1;
+			for (int i = 0; i < lists.length; i++){
+				int freq = lists[i] == null ? 0 : lists[i].frequency(docs[d]);
+				if (freq == 0){
+					continue;
+				}
+				hits.scores[d] += freq;
+				if (hits.keywords[d] == -1){
+					hits.keywords[d] = i;
+					hits.frequencies[d] = freq;
+				}
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Writes these hits to a stream, as sent by a ShardServer.
+	 *
+	 * @param out Stream
+	 * @throws IOException If the stream cannot be written
+	 */
+	void write(DataOutputStream out)
+	throws IOException {
+		out.writeInt(names.length);
+		for (int i = 0; i < names.length; i++){
+			out.writeUTF(names[i]);
+			out.writeInt(scores[i]);
+			out.writeInt(keywords[i]);
+			out.writeInt(frequencies[i]);
+		}
+	}
+
+	/**
+	 * Reads hits written by write.
+	 *
+	 * @param in Stream
+	 * @return Hits
+	 * @throws IOException If the stream cannot be read
+	 */
+	static ShardHits read(DataInputStream in)
+	throws IOException {
+		ShardHits hits = new ShardHits(in.readInt());
+		for (int i = 0; i < hits.names.length; i++){
+			hits.names[i] = in.readUTF();
+			hits.scores[i] = in.readInt();
+			hits.keywords[i] = in.readInt();
+			hits.frequencies[i] = in.readInt();
+		}
+		return hits;
+	}
+}
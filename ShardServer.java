@@ -0,0 +1,157 @@
+package search;
+
+import java.io.*;
+import java.net.*;
+
+/**
+ * Serves one shard of a ShardedEngine to coordinators in other processes, over sockets on the
+ * loopback interface. Run it as
+ * <pre>
+ *   java search.ShardServer [port]
+ * </pre>
+ * With no port, or port 0, a free port is picked. The port is printed on the first line of
+ * standard output once the server is listening. Document and noise word file names sent by a
+ * coordinator are opened by the server, relative to its own working directory.
+ * 
+ * Each request is an operation code followed by its arguments; each reply is a status code,
+ * followed by the result if the status is OK, or by an error message otherwise. Requests are
+ * handled one at a time, whatever connection they come from.
+ *
+ */
+public class ShardServer {
+
+	/**
+	 * Operation codes.
+	 */
+	static final byte NOISE = 1, ADD = 2, DELETE = 3, SEARCH = 4, CLOSE = 5, SHUTDOWN = 6;
+
+	/**
+	 * Status codes of replies.
+	 */
+	static final byte OK = 0, NOT_FOUND = 1, FAILED = 2;
+
+	/**
+	 * Index of the shard's documents.
+	 */
+	private final LittleSearchEngine engine = new LittleSearchEngine();
+
+	private final ServerSocket server;
+
+	private ShardServer(int port)
+	throws IOException {
+		server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+	}
+
+	/**
+	 * Starts a shard server.
+	 *
+	 * @param args Optional port number
+	 * @throws IOException If the server socket cannot be opened
+	 */
+	public static void main(String[] args)
+	throws IOException {
+		ShardServer shard = new ShardServer(args.length > 0 ? Integer.parseInt(args[0]) : 0);
+		System.out.println(shard.server.getLocalPort());
+		System.out.flush();
+		shard.run();
+	}
+
+	/**
+	 * Accepts connections until a SHUTDOWN request, serving each on its own thread.
+	 */
+	private void run()
+	throws IOException {
+		while (!server.isClosed()){
+			final Socket socket;
+			try {
+				socket = server.accept();
+			}
+			catch (SocketException e){
+				// closed by SHUTDOWN
+				break;
+			}
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					serve(socket);
+				}
+			}, "shard-" + socket.getPort());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Answers the requests of one connection until it is closed.
+	 */
+	private void serve(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			while (true){
+				int op = in.read();
+				if (op == -1 || op == CLOSE){
+					break;
+				}
+				if (op == SHUTDOWN){
+					out.writeByte(OK);
+					out.flush();
+					server.close();
+					break;
+				}
+				synchronized (engine){
+					handle(op, in, out);
+				}
+				out.flush();
+			}
+			socket.close();
+		}
+		catch (IOException e){
+			// the coordinator went away
+		}
+	}
+
+	private void handle(int op, DataInputStream in, DataOutputStream out)
+	throws IOException {
+		try {
+			switch (op){
+			case NOISE:
+				engine.loadNoiseWords(in.readUTF());
+				out.writeByte(OK);
+				break;
+			case ADD:
+				engine.addDocument(in.readUTF());
+				out.writeByte(OK);
+				break;
+			case DELETE:
+				boolean deleted = engine.deleteDocument(in.readUTF());
+				out.writeByte(OK);
+				out.writeBoolean(deleted);
+				break;
+			case SEARCH:
+				int k = in.readInt();
+				String[] keywords = new String[in.readInt()];
+				for (int i = 0; i < keywords.length; i++){
+					keywords[i] = in.readUTF();
+				}
+				ShardHits hits = LocalShard.search(engine, k, keywords);
+				out.writeByte(OK);
+				out.writeBoolean(hits != null);
+				if (hits != null){
+					hits.write(out);
+				}
+				break;
+			default:
+				throw new IOException("Unknown operation " + op);
+			}
+		}
+		catch (FileNotFoundException e){
+			out.writeByte(NOT_FOUND);
+			out.writeUTF(String.valueOf(e.getMessage()));
+		}
+		catch (RuntimeException e){
+			out.writeByte(FAILED);
+			out.writeUTF(e.toString());
+		}
+	}
+}
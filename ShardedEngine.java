@@ -0,0 +1,405 @@
+package search;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * This class spreads the documents of an index over several shards, each a LittleSearchEngine
+ * of its own, held in this JVM or in separate processes reached over loopback sockets. A search
+ * is sent to every shard at once; each shard returns its own best k documents, and these are
+ * merged into the best k overall (scatter-gather).
+ * 
+ * The merged result is the same as that of a single LittleSearchEngine that indexed the same
+ * documents in the same order, ties included. For this, the engine numbers documents in the
+ * order they are added, the way a single index hands out document ids, and deals them out to
+ * the shards in turn; a shard then keeps its documents in the same relative order as the single
+ * index. Documents are ranked by score, then by the first keyword of the search they occur in,
+ * then by their place in that keyword's posting list, which is by descending frequency and
+ * then by that number.
+ * 
+ * Searches may run at the same time as each other, but not at the same time as changes to
+ * the index, which wait for searches in progress to finish.
+ *
+ */
+public class ShardedEngine implements Closeable {
+
+	/**
+	 * The shards. The document numbered n goes to shard n % shards.length.
+	 */
+	private final Shard[] shards;
+
+	/**
+	 * Number of each document in the index, in the order documents were added. A document that
+	 * is added again gets a new number, as it gets a new id in a single index.
+	 */
+	private final HashMap<String,Integer> numbers = new HashMap<String,Integer>();
+
+	/**
+	 * Number of the next document added.
+	 */
+	private int nextNumber;
+
+	/**
+	 * Threads that send requests to the shards.
+	 */
+	private final ExecutorService pool;
+
+	/**
+	 * Read lock for searches, write lock for changes.
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Initializes an engine with shards held in this JVM.
+	 *
+	 * @param shards Number of shards
+	 */
+	public ShardedEngine(int shards) {
+		this(localShards(shards));
+	}
+
+	private ShardedEngine(Shard[] shards) {
+		this.shards = shards;
+		pool = Executors.newFixedThreadPool(shards.length, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "shard-request");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private static Shard[] localShards(int count) {
+		if (count < 1){
+			throw new IllegalArgumentException("shards must be at least 1: " + count);
+		}
+		Shard[] shards = new Shard[count];
+		for (int i = 0; i < count; i++){
+			shards[i] = new LocalShard();
+		}
+		return shards;
+	}
+
+	/**
+	 * Initializes an engine with each shard in a new JVM, started with the same class path and
+	 * working directory as this one. The processes are stopped when the engine is closed.
+	 *
+	 * @param count Number of shards
+	 * @return Engine over the new shards
+	 * @throws IOException If a shard process cannot be started
+	 */
+	public static ShardedEngine launch(int count)
+	throws IOException {
+		if (count < 1){
+			throw new IllegalArgumentException("shards must be at least 1: " + count);
+		}
+		Shard[] shards = new Shard[count];
+		try {
+			for (int i = 0; i < count; i++){
+				shards[i] = RemoteShard.launch();
+			}
+		}
+		catch (IOException e){
+			closeAll(shards);
+			throw e;
+		}
+		return new ShardedEngine(shards);
+	}
+
+	/**
+	 * Initializes an engine over ShardServers already running on this machine. The servers
+	 * should have empty indexes.
+	 *
+	 * @param ports Ports of the servers, one per shard
+	 * @return Engine over the servers
+	 * @throws IOException If a server cannot be reached
+	 */
+	public static ShardedEngine connect(int... ports)
+	throws IOException {
+		if (ports.length == 0){
+			throw new IllegalArgumentException("No shard ports");
+		}
+		Shard[] shards = new Shard[ports.length];
+		try {
+			for (int i = 0; i < ports.length; i++){
+				shards[i] = RemoteShard.connect(ports[i]);
+			}
+		}
+		catch (IOException e){
+			closeAll(shards);
+			throw e;
+		}
+		return new ShardedEngine(shards);
+	}
+
+	/**
+	 * Returns the number of shards.
+	 *
+	 * @return Number of shards
+	 */
+	public int shardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * Indexes all the input documents, as LittleSearchEngine.makeIndex does. Every shard indexes
+	 * its own documents, all shards at the same time. As in a single engine, a document listed
+	 * more than once in docsFile is indexed once, and numbered at its first place in the list.
+	 *
+	 * @param docsFile Name of file that has a list of all the document file names, one name per line
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @throws FileNotFoundException If there is a problem locating any of the input files on disk
+	 * @throws IOException If a shard cannot be reached
+	 */
+	public void makeIndex(String docsFile, final String noiseWordsFile)
+	throws IOException {
+		lock.writeLock().lock();
+		try {
+			ArrayList<ArrayList<String>> docs = new ArrayList<ArrayList<String>>(shards.length);
+			for (int i = 0; i < shards.length; i++){
+				docs.add(new ArrayList<String>());
+			}
+			Scanner sc = new Scanner(new File(docsFile));
+			HashSet<String> listed = new HashSet<String>();
+			while (sc.hasNext()){
+				String docFile = sc.next();
+				if (!listed.add(docFile)){
+					continue;
+				}
+				Integer old = numbers.get(docFile);
+				if (old != null && old % shards.length != nextNumber % shards.length){
+					shards[old % shards.length].deleteDocument(docFile);
+				}
+				numbers.put(docFile, nextNumber);
+				docs.get(nextNumber % shards.length).add(docFile);
+				nextNumber++;
+			}
+			ArrayList<Future<Void>> pending = new ArrayList<Future<Void>>();
+			for (int i = 0; i < shards.length; i++){
+				final Shard shard = shards[i];
+				final ArrayList<String> list = docs.get(i);
+				pending.add(pool.submit(new Callable<Void>() {
+					public Void call() throws IOException {
+						shard.loadNoiseWords(noiseWordsFile);
+						for (String docFile : list){
+							shard.addDocument(docFile);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : pending){
+				await(f);
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a single document to the index, or re-indexes it if it is already there, as
+	 * LittleSearchEngine.addDocument does.
+	 *
+	 * @param docFile Name of the document file
+	 * @throws FileNotFoundException If the document file is not found on disk
+	 * @throws IOException If a shard cannot be reached
+	 */
+	public void addDocument(String docFile)
+	throws IOException {
+		lock.writeLock().lock();
+		try {
+			String name = docFile.trim();
+			shards[nextNumber % shards.length].addDocument(docFile);
+			Integer old = numbers.put(name, nextNumber);
+			if (old != null && old % shards.length != nextNumber % shards.length){
+				shards[old % shards.length].deleteDocument(name);
+			}
+			nextNumber++;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Deletes a document from the index.
+	 *
+	 * @param docFile Name of the document file
+	 * @return True if the document was in the index
+	 * @throws IOException If a shard cannot be reached
+	 */
+	public boolean deleteDocument(String docFile)
+	throws IOException {
+		lock.writeLock().lock();
+		try {
+			String name = docFile.trim();
+			Integer number = numbers.remove(name);
+			return number != null && shards[number % shards.length].deleteDocument(name);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Same as LittleSearchEngine.top5search, over all shards.
+	 *
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @return List of NAMES of documents in which either kw1 or kw2 occurs, best first; null if
+	 *         there are none
+	 * @throws IOException If a shard cannot be reached
+	 */
+	public ArrayList<String> top5search(String kw1, String kw2)
+	throws IOException {
+		return topKSearch(5, kw1, kw2);
+	}
+
+	/**
+	 * Same as LittleSearchEngine.topKSearch, over all shards. The search is sent to every shard
+	 * at once, and the best k documents of each shard are merged.
+	 *
+	 * @param k Maximum number of documents in the result
+	 * @param keywords Keywords, in order of preference for breaking ties
+	 * @return List of NAMES of documents in which any of the keywords occurs, best first; null
+	 *         if none of the keywords is in the index
+	 * @throws IOException If a shard cannot be reached
+	 */
+	public ArrayList<String> topKSearch(final int k, String... keywords)
+	throws IOException {
+		if (k < 0){
+			throw new IllegalArgumentException("k must not be negative: " + k);
+		}
+		final String[] query = keywords.clone();
+		lock.readLock().lock();
+		try {
+			ArrayList<Future<ShardHits>> pending = new ArrayList<Future<ShardHits>>(shards.length);
+			for (final Shard shard : shards){
+				pending.add(pool.submit(new Callable<ShardHits>() {
+					public ShardHits call() throws IOException {
+						return shard.search(k, query);
+					}
+				}));
+			}
+			ShardHits[] hits = new ShardHits[shards.length];
+			for (int i = 0; i < shards.length; i++){
+				hits[i] = await(pending.get(i));
+			}
+			return merge(hits, k);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Merges the best documents of every shard into the best k overall.
+	 */
+	private ArrayList<String> merge(ShardHits[] hits, int k) {
+		int total = 0;
+		boolean found = false;
+		for (ShardHits h : hits){
+			if (h != null){
+				found = true;
+				total += h.size();
+			}
+		}
+		if (!found){
+			return null;
+		}
+		final String[] names = new String[total];
+		final int[] scores = new int[total];
+		final int[] keywords = new int[total];
+		final int[] frequencies = new int[total];
+		final int[] order = new int[total];
+		Integer[] ranked = new Integer[total];
+		int n = 0;
+		for (ShardHits h : hits){
+			for (int i = 0; h != null && i < h.size(); i++){
+				names[n] = h.names[i];
+				scores[n] = h.scores[i];
+				keywords[n] = h.keywords[i];
+				frequencies[n] = h.frequencies[i];
+				order[n] = numbers.get(h.names[i]);
+				ranked[n] = n;
+				n++;
+			}
+		}
+		Arrays.sort(ranked, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if (scores[a] != scores[b]){
+					return scores[a] > scores[b] ? -1 : 1;
+				}
+				if (keywords[a] != keywords[b]){
+					return keywords[a] < keywords[b] ? -1 : 1;
+				}
+				if (frequencies[a] != frequencies[b]){
+					return frequencies[a] > frequencies[b] ? -1 : 1;
+				}
+				return order[a] < order[b] ? -1 : order[a] > order[b] ? 1 : 0;
+			}
+		});
+		ArrayList<String> result = new ArrayList<String>(Math.min(k, total));
+		for (int i = 0; i < total && i < k; i++){
+			result.add(names[ranked[i]]);
+		}
+		return result;
+	}
+
+	/**
+	 * Closes all shards, stopping the shard processes started by launch.
+	 *
+	 * @throws IOException If a shard could not be closed cleanly
+	 */
+	public void close()
+	throws IOException {
+		pool.shutdownNow();
+		closeAll(shards);
+	}
+
+	private static void closeAll(Shard[] shards)
+	throws IOException {
+		IOException failure = null;
+		for (Shard shard : shards){
+			if (shard == null){
+				continue;
+			}
+			try {
+				shard.close();
+			}
+			catch (IOException e){
+				failure = e;
+			}
+		}
+		if (failure != null){
+			throw failure;
+		}
+	}
+
+	/**
+	 * Waits for a request sent to a shard, and hands back its result.
+	 */
+	private static <T> T await(Future<T> request)
+	throws IOException {
+		try {
+			return request.get();
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a shard");
+		}
+		catch (ExecutionException e){
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException){
+				throw (IOException)cause;
+			}
+			if (cause instanceof RuntimeException){
+				throw (RuntimeException)cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+}
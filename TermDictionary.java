@@ -0,0 +1,296 @@
+package search;
+
+import java.util.*;
+
+/**
+ * This class is a sorted dictionary of all keywords in an index, for searches on a range of
+ * keywords, such as every keyword with a given prefix. Keywords are front coded in blocks of
+ * BLOCK keywords: the first keyword of a block is stored in full, and every other keyword as the
+ * number of leading characters it shares with the keyword before it plus the rest of its
+ * characters. All blocks are packed into a single char array, so the dictionary takes about as
+ * much memory as the characters of the keywords, or less.
+ *
+ */
+class TermDictionary {
+
+	/**
+	 * Number of keywords in a block.
+	 */
+	static final int BLOCK = 16;
+
+	/**
+	 * Index this dictionary was built from.
+	 */
+	final IndexReader index;
+
+	/**
+	 * Front coded keywords. Each keyword is: shared length, suffix length, suffix characters.
+	 * Lengths below 0x8000 take one char; longer ones take two, the first with its top bit set.
+	 */
+	private final char[] data;
+
+	/**
+	 * Offset in data of the first keyword of each block.
+	 */
+	private final int[] blocks;
+
+	/**
+	 * Number of keywords.
+	 */
+	private final int size;
+
+	/**
+	 * Builds the dictionary of an index.
+	 *
+	 * @param index Index
+	 */
+	TermDictionary(IndexReader index) {
+		this.index = index;
+		ArrayList<String> terms = new ArrayList<String>();
+		int chars = 0;
+		for (String keyword : index.keywords()){
+			terms.add(keyword);
+			chars += keyword.length();
+		}
+		Collections.sort(terms);
+		size = terms.size();
+		blocks = new int[(size + BLOCK - 1) / BLOCK];
+		char[] buf = new char[chars + 4*size];
+		int at = 0;
+		String previous = "";
+		for (int i = 0; i < size; i++){
+			String term = terms.get(i);
+			int shared = 0;
+			if (i % BLOCK == 0){
+				blocks[i / BLOCK] = at;
+			}
+			else {
+				int max = Math.min(previous.length(), term.length());
+				while (shared < max && previous.charAt(shared) == term.charAt(shared)){
+					shared++;
+				}
+			}
+			at = writeLength(buf, at, shared);
+			at = writeLength(buf, at, term.length() - shared);
+			term.getChars(shared, term.length(), buf, at);
+			at += term.length() - shared;
+			previous = term;
+		}
+		data = Arrays.copyOf(buf, at);
+	}
+
+	/**
+	 * Returns the number of keywords.
+	 *
+	 * @return Number of keywords
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the keyword at a position in sorted order.
+	 *
+	 * @param i Position of the keyword
+	 * @return Keyword
+	 */
+	String term(int i) {
+		Cursor c = cursor(i);
+		c.next();
+		return c.term();
+	}
+
+	/**
+	 * Returns the position of the first keyword that is greater than or equal to a key.
+	 *
+	 * @param key Key
+	 * @return Position of the keyword, size() if all keywords are smaller than the key
+	 */
+	int ceiling(String key) {
+		// last block whose first keyword is <= key
+		int left = 0;
+		int right = blocks.length-1;
+		int block = -1;
+		while (left <= right){
+			int mid = (left+right) >>> 1;
+			if (compareFirst(mid, key) <= 0){
+				block = mid;
+				left = mid + 1;
+			}
+			else {
+				right = mid - 1;
+			}
+		}
+		if (block == -1){
+			return 0;
+		}
+		Cursor c = cursor(block * BLOCK);
+		int end = Math.min(size, (block+1) * BLOCK);
+		while (c.position() + 1 < end){
+			c.next();
+			if (c.compareTo(key) >= 0){
+				return c.position();
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Returns the positions of all keywords that start with a prefix.
+	 *
+	 * @param prefix Prefix
+	 * @return Two positions: the first keyword with the prefix, and one past the last one
+	 */
+	int[] prefixRange(String prefix) {
+		int from = ceiling(prefix);
+		// the smallest string greater than every string with this prefix
+		char[] bound = prefix.toCharArray();
+		int n = bound.length;
+		while (n > 0 && bound[n-1] == Character.MAX_VALUE){
+			n--;
+		}
+		if (n == 0){
+			return new int[] { from, size };
+		}
+		bound[n-1]++;
+		return new int[] { from, ceiling(new String(bound, 0, n)) };
+	}
+
+	/**
+	 * Returns a cursor that reads the keywords in order, starting at a position.
+	 *
+	 * @param from Position of the first keyword to read
+	 * @return Cursor before the keyword at from
+	 */
+	Cursor cursor(int from) {
+		Cursor c = new Cursor();
+		if (from >= size){
+			c.position = size - 1;
+			c.offset = data.length;
+			return c;
+		}
+		int block = from / BLOCK;
+		c.position = block * BLOCK - 1;
+		c.offset = blocks[block];
+		while (c.position + 1 < from){
+			c.next();
+		}
+		return c;
+	}
+
+	/**
+	 * Reads keywords in sorted order, decoding each into a reusable char buffer.
+	 */
+	class Cursor {
+
+		/**
+		 * Characters of the current keyword.
+		 */
+		char[] term = new char[32];
+
+		/**
+		 * Length of the current keyword, and the number of its leading characters shared with
+		 * the keyword before it (0 at the start of a block).
+		 */
+		int length, shared;
+
+		private int position, offset;
+
+		/**
+		 * Moves to the next keyword.
+		 *
+		 * @return False if there are no more keywords
+		 */
+		boolean next() {
+			if (position + 1 >= size){
+				return false;
+			}
+			position++;
+			shared = readLength();
+			int suffix = readLength();
+			length = shared + suffix;
+			if (length > term.length){
+				term = Arrays.copyOf(term, Math.max(length, term.length * 2));
+			}
+			System.arraycopy(data, offset, term, shared, suffix);
+			offset += suffix;
+			return true;
+		}
+
+		/**
+		 * Returns the position of the current keyword.
+		 *
+		 * @return Position in sorted order
+		 */
+		int position() {
+			return position;
+		}
+
+		/**
+		 * Returns the current keyword as a String.
+		 *
+		 * @return Keyword
+		 */
+		String term() {
+			return new String(term, 0, length);
+		}
+
+		/**
+		 * Compares the current keyword with a key, in String order.
+		 *
+		 * @param key Key
+		 * @return Negative, zero or positive as the keyword is less than, equal to or greater than key
+		 */
+		int compareTo(String key) {
+			int n = Math.min(length, key.length());
+			for (int i = 0; i < n; i++){
+				int c = term[i] - key.charAt(i);
+				if (c != 0){
+					return c;
+				}
+			}
+			return length - key.length();
+		}
+
+		private int readLength() {
+			int len = data[offset++];
+			if ((len & 0x8000) != 0){
+				len = ((len & 0x7FFF) << 16) | data[offset++];
+			}
+			return len;
+		}
+	}
+
+	/**
+	 * Compares the first keyword of a block with a key, in String order.
+	 */
+	private int compareFirst(int block, String key) {
+		int at = blocks[block];
+		at += data[at] >= 0x8000 ? 2 : 1; // shared length, always 0
+		int length = data[at];
+		if ((length & 0x8000) != 0){
+			length = ((length & 0x7FFF) << 16) | data[at+1];
+			at++;
+		}
+		at++;
+		int n = Math.min(length, key.length());
+		for (int i = 0; i < n; i++){
+			int c = data[at+i] - key.charAt(i);
+			if (c != 0){
+				return c;
+			}
+		}
+		return length - key.length();
+	}
+
+	private static int writeLength(char[] buf, int at, int length) {
+		if (length < 0x8000){
+			buf[at++] = (char)length;
+		}
+		else {
+			buf[at++] = (char)(0x8000 | (length >>> 16));
+			buf[at++] = (char)length;
+		}
+		return at;
+	}
+}
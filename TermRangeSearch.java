@@ -0,0 +1,96 @@
+package search;
+
+import java.util.*;
+
+/**
+ * Searches on a range of keywords taken from the sorted TermDictionary: all keywords between two
+ * bounds, or all keywords matching a wildcard pattern. The matching keywords are expanded into
+ * their posting lists and searched together as "kw1 or kw2 or ... or kwn"; ties are broken in
+ * favor of the keyword that comes first in sorted order.
+ *
+ */
+class TermRangeSearch {
+
+	private TermRangeSearch() {
+	}
+
+	/**
+	 * Returns the keywords between two bounds.
+	 *
+	 * @param dictionary Sorted keywords
+	 * @param from Lowest keyword, inclusive
+	 * @param to Highest keyword, inclusive
+	 * @return Keywords in the range, in sorted order
+	 */
+	static String[] range(TermDictionary dictionary, String from, String to) {
+		int start = dictionary.ceiling(from);
+		int end = dictionary.ceiling(to);
+		if (end < dictionary.size() && dictionary.term(end).equals(to)){
+			end++;
+		}
+		ArrayList<String> terms = new ArrayList<String>();
+		TermDictionary.Cursor c = dictionary.cursor(start);
+		while (c.position() + 1 < end && c.next()){
+			terms.add(c.term());
+		}
+		return terms.toArray(new String[terms.size()]);
+	}
+
+	/**
+	 * Returns the keywords that match a wildcard pattern, where '*' matches any run of characters
+	 * and '?' matches any one character. Only the keywords that start with the part of the pattern
+	 * before the first wildcard are looked at.
+	 *
+	 * @param dictionary Sorted keywords
+	 * @param pattern Pattern
+	 * @return Matching keywords, in sorted order
+	 */
+	static String[] wildcard(TermDictionary dictionary, String pattern) {
+		int literal = 0;
+		while (literal < pattern.length() && pattern.charAt(literal) != '*' && pattern.charAt(literal) != '?'){
+			literal++;
+		}
+		int[] range = dictionary.prefixRange(pattern.substring(0, literal));
+		boolean prefixOnly = literal == pattern.length()-1 && pattern.charAt(literal) == '*';
+		ArrayList<String> terms = new ArrayList<String>();
+		TermDictionary.Cursor c = dictionary.cursor(range[0]);
+		while (c.position() + 1 < range[1] && c.next()){
+			if (prefixOnly || matches(c.term, c.length, pattern, literal)){
+				terms.add(c.term());
+			}
+		}
+		return terms.toArray(new String[terms.size()]);
+	}
+
+	/**
+	 * Matches a keyword against a wildcard pattern, given that the first start characters of the
+	 * keyword are known to match.
+	 */
+	static boolean matches(char[] term, int length, String pattern, int start) {
+		int t = start;
+		int p = start;
+		int starAt = -1;
+		int starMatch = 0;
+		while (t < length){
+			if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == term[t])){
+				t++;
+				p++;
+			}
+			else if (p < pattern.length() && pattern.charAt(p) == '*'){
+				starAt = p++;
+				starMatch = t;
+			}
+			else if (starAt != -1){
+				p = starAt + 1;
+				t = ++starMatch;
+			}
+			else {
+				return false;
+			}
+		}
+		while (p < pattern.length() && pattern.charAt(p) == '*'){
+			p++;
+		}
+		return p == pattern.length();
+	}
+}
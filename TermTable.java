@@ -0,0 +1,223 @@
+package search;
+
+import java.util.*;
+
+/**
+ * This class gives dense int ids, starting at 0, to strings such as keywords and document
+ * names. The characters of all strings are packed one after another into a single char array,
+ * the arena, and found again through an open addressing hash table of ids. So a table of
+ * millions of strings is a handful of large arrays instead of millions of String objects.
+ *
+ * Strings are only ever added, never changed or removed, which is what lets view() hand out
+ * a read-only table that shares all arrays with this one.
+ *
+ */
+class TermTable {
+
+	/**
+	 * Characters of all strings, in order of id.
+	 */
+	private char[] chars;
+
+	/**
+	 * Offset in chars of each string, indexed by id, and one past the last string at size.
+	 */
+	private int[] starts;
+
+	/**
+	 * Hash code of each string, indexed by id.
+	 */
+	private int[] hashes;
+
+	/**
+	 * Open addressing hash table: id+1 of a string, 0 for an empty slot. The length is always
+	 * a power of 2.
+	 */
+	private int[] slots;
+
+	/**
+	 * Number of strings.
+	 */
+	private int size;
+
+	/**
+	 * False for a view, which must not be added to.
+	 */
+	private final boolean writable;
+
+	/**
+	 * Initializes an empty table with room for the given number of strings before it has to grow.
+	 *
+	 * @param expected Expected number of strings
+	 */
+	TermTable(int expected) {
+		int capacity = 16;
+		while (capacity < expected * 2){
+			capacity <<= 1;
+		}
+		chars = new char[Math.max(64, expected * 8)];
+		starts = new int[capacity / 2 + 1];
+		hashes = new int[capacity / 2];
+		slots = new int[capacity];
+		writable = true;
+	}
+
+	private TermTable(TermTable table) {
+		chars = table.chars;
+		starts = table.starts;
+		hashes = table.hashes;
+		slots = table.slots;
+		size = table.size;
+		writable = false;
+	}
+
+	/**
+	 * Returns a read-only view of the strings in this table so far. Strings added to this
+	 * table afterwards are not in the view, and the view stays valid however this table grows.
+	 *
+	 * @return View of this table
+	 */
+	TermTable view() {
+		return new TermTable(this);
+	}
+
+	/**
+	 * Returns the number of strings in this table.
+	 *
+	 * @return Number of strings
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the id of a string.
+	 *
+	 * @param str String
+	 * @return Id of the string, -1 if it is not in this table
+	 */
+	int find(String str) {
+		int hash = hash(str);
+		int n = size;
+		int mask = slots.length - 1;
+		for (int i = hash & mask; ; i = (i+1) & mask){
+			int id = slots[i] - 1;
+			// a view stops at strings added after it was taken, as at an empty slot: they
+			// only ever take slots that were empty, past those of the strings in the view
+			if (id < 0 || id >= n){
+				return -1;
+			}
+			if (hashes[id] == hash && matches(id, str)){
+				return id;
+			}
+		}
+	}
+
+	/**
+	 * Returns the id of a string, adding the string to this table if it is not in it yet.
+	 *
+	 * @param str String
+	 * @return Id of the string
+	 */
+	int add(String str) {
+		if (!writable){
+			throw new UnsupportedOperationException("view of a term table");
+		}
+		int hash = hash(str);
+		int mask = slots.length - 1;
+		int i = hash & mask;
+		for (; slots[i] != 0; i = (i+1) & mask){
+			int id = slots[i] - 1;
+			if (hashes[id] == hash && matches(id, str)){
+				return id;
+			}
+		}
+		int at = reserve(str.length());
+		str.getChars(0, str.length(), chars, at);
+		return insert(i, hash, at + str.length());
+	}
+
+	/**
+	 * Returns the string with a given id.
+	 *
+	 * @param id Id
+	 * @return String
+	 */
+	String term(int id) {
+		return new String(chars, starts[id], starts[id+1] - starts[id]);
+	}
+
+	/**
+	 * Returns the length of the string with a given id.
+	 *
+	 * @param id Id
+	 * @return Number of characters
+	 */
+	int length(int id) {
+		return starts[id+1] - starts[id];
+	}
+
+	/**
+	 * Makes room in the arena for the characters of a new string.
+	 *
+	 * @return Offset of the new string in the arena
+	 */
+	private int reserve(int length) {
+		int at = starts[size];
+		if (at + length > chars.length){
+			long grown = Math.max((long)at + length, chars.length * 2L);
+			if (grown > Integer.MAX_VALUE - 8){
+				throw new IllegalStateException("term table is full");
+			}
+			chars = Arrays.copyOf(chars, (int)grown);
+		}
+		return at;
+	}
+
+	private int insert(int slot, int hash, int end) {
+		int id = size;
+		if (id == hashes.length){
+			hashes = Arrays.copyOf(hashes, id * 2);
+			starts = Arrays.copyOf(starts, id * 2 + 1);
+		}
+		starts[id+1] = end;
+		hashes[id] = hash;
+		slots[slot] = id + 1;
+		size++;
+		if (size * 2 > slots.length){
+			grow();
+		}
+		return id;
+	}
+
+	private void grow() {
+		int[] grown = new int[slots.length * 2];
+		int mask = grown.length - 1;
+		for (int id = 0; id < size; id++){
+			int i = hashes[id] & mask;
+			while (grown[i] != 0){
+				i = (i+1) & mask;
+			}
+			grown[i] = id + 1;
+		}
+		slots = grown;
+	}
+
+	private boolean matches(int id, String str) {
+		int start = starts[id];
+		if (starts[id+1] - start != str.length()){
+			return false;
+		}
+		for (int i = 0; i < str.length(); i++){
+			if (chars[start+i] != str.charAt(i)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int hash(String str) {
+		int h = str.hashCode();
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,178 @@
+package search;
+
+import java.util.*;
+
+/**
+ * This class collects the best k documents of a search in a bounded min-heap. Documents are
+ * ranked by descending score; ties in score are broken by a tie key, where the smaller key
+ * wins, and then by document id, where the smaller id wins. The root of the heap is always the worst of the documents kept, so a new document
+ * only has to be compared against the root once the heap is full. The heap starts out no
+ * bigger than the number of documents the search expects to find, and grows up to k as
+ * documents come in, so a large k costs nothing when few documents match.
+ *
+ */
+class TopDocs {
+
+	/**
+	 * Heap of document ids, with their scores and tie keys at the same index.
+	 */
+	private int[] docs;
+	private double[] scores;
+	private long[] ties;
+
+	/**
+	 * Number of documents to keep.
+	 */
+	private final int k;
+
+	/**
+	 * Number of documents in the heap.
+	 */
+	private int size;
+
+	/**
+	 * Initializes an empty heap that keeps at most k documents.
+	 *
+	 * @param k Number of documents to keep
+	 * @param expected Largest number of documents the search can offer, used to size the heap
+	 */
+	TopDocs(int k, int expected) {
+		this.k = k;
+		int capacity = Math.max(0, Math.min(k, expected));
+		docs = new int[capacity];
+		scores = new double[capacity];
+		ties = new long[capacity];
+	}
+
+	/**
+	 * Returns the number of documents kept so far.
+	 *
+	 * @return Number of documents
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if the heap holds k documents, so a document has to beat the worst of them
+	 * to get in.
+	 *
+	 * @return True if the heap is full
+	 */
+	boolean isFull() {
+		return size == k;
+	}
+
+	/**
+	 * Returns the score of the worst document kept. Only meaningful when the heap is not empty.
+	 *
+	 * @return Lowest score in the heap
+	 */
+	double minScore() {
+		return scores[0];
+	}
+
+	/**
+	 * Returns the tie key of the worst document kept. Only meaningful when the heap is not empty.
+	 *
+	 * @return Tie key of the lowest ranked document in the heap
+	 */
+	long minTie() {
+		return ties[0];
+	}
+
+	/**
+	 * Offers a document to the heap. It is kept if the heap is not full, or if it ranks above
+	 * the worst document kept, which is then dropped.
+	 *
+	 * @param doc Document id
+	 * @param score Score of the document
+	 * @param tie Tie key of the document
+	 * @return True if the document was kept
+	 */
+	boolean offer(int doc, double score, long tie) {
+		if (k == 0){
+			return false;
+		}
+		if (size < k){
+			if (size == docs.length){
+				grow();
+			}
+			int i = size++;
+			while (i > 0){
+				int parent = (i-1)/2;
+				if (!worse(score, tie, doc, scores[parent], ties[parent], docs[parent])){
+					break;
+				}
+				set(i, docs[parent], scores[parent], ties[parent]);
+				i = parent;
+			}
+			set(i, doc, score, tie);
+			return true;
+		}
+		if (!worse(scores[0], ties[0], docs[0], score, tie, doc)){
+			return false;
+		}
+		siftDown(doc, score, tie);
+		return true;
+	}
+
+	/**
+	 * Empties the heap and returns the documents it held, best first.
+	 *
+	 * @return Document ids in rank order
+	 */
+	int[] drain() {
+		int[] result = new int[size];
+		while (size > 0){
+			result[size-1] = docs[0];
+			size--;
+			if (size > 0){
+				siftDown(docs[size], scores[size], ties[size]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Puts a document at the root, then moves it down to its place in the heap.
+	 */
+	private void siftDown(int doc, double score, long tie) {
+		int i = 0;
+		while (true){
+			int child = 2*i + 1;
+			if (child >= size){
+				break;
+			}
+			if (child+1 < size && worse(scores[child+1], ties[child+1], docs[child+1], scores[child], ties[child], docs[child])){
+				child++;
+			}
+			if (!worse(scores[child], ties[child], docs[child], score, tie, doc)){
+				break;
+			}
+			set(i, docs[child], scores[child], ties[child]);
+			i = child;
+		}
+		set(i, doc, score, tie);
+	}
+
+	private void grow() {
+		int capacity = (int)Math.min(k, Math.max(16, 2L * docs.length));
+		docs = Arrays.copyOf(docs, capacity);
+		scores = Arrays.copyOf(scores, capacity);
+		ties = Arrays.copyOf(ties, capacity);
+	}
+
+	private void set(int i, int doc, double score, long tie) {
+		docs[i] = doc;
+		scores[i] = score;
+		ties[i] = tie;
+	}
+
+	/**
+	 * Returns true if the first document ranks below the second.
+	 */
+	static boolean worse(double score1, long tie1, int doc1, double score2, long tie2, int doc2) {
+		return score1 < score2 || (score1 == score2 && (tie1 > tie2 || (tie1 == tie2 && doc1 > doc2)));
+	}
+}
@@ -0,0 +1,151 @@
+package search;
+
+/**
+ * Search for "kw1 or kw2 or ... or kwn", generalizing top5search to any number of keywords and
+ * any number of results. There are two ways to evaluate it, with the same result:
+ * <ul>
+ * <li>search reads every posting list in full, adding up the frequencies of each document in a
+ *     DocAccumulator, and picks the best k documents with a bounded heap;</li>
+ * <li>threshold reads the posting lists in parallel, from the highest frequency down, and stops
+ *     as soon as no document it has not seen yet can make it into the best k (Fagin's threshold
+ *     algorithm).</li>
+ * </ul>
+ * 
+ * Ties are broken the same way as in top5search: in favor of the earlier keyword, and within
+ * the same keyword in favor of the document that comes first in its posting list. A posting list
+ * is in descending order of frequency, then ascending order of document id, so a document's tie
+ * key is (index of the first keyword it occurs in, its frequency there, highest first), and
+ * TopDocs breaks what is left by document id. Unlike the position in the list, the frequency of
+ * a document can be looked up without reading the list up to it.
+ *
+ */
+class TopKSearch {
+
+	private TopKSearch() {
+	}
+
+	/**
+	 * Returns the best k documents that contain any of the keywords.
+	 *
+	 * @param index Index to search
+	 * @param keywords Keywords, in order of preference for breaking ties
+	 * @param k Maximum number of documents to return
+	 * @return Ids of the matching documents, best first; null if none of the keywords is in the index
+	 */
+	static int[] search(IndexReader index, String[] keywords, int k) {
+		PostingsCursor[] lists = new PostingsCursor[keywords.length];
+		int total = 0;
+		for (int i = 0; i < keywords.length; i++){
+			lists[i] = index.cursor(keywords[i]);
+			if (lists[i] != null){
+				total += lists[i].size();
+			}
+		}
+		if (total == 0){
+			return null;
+		}
+		DocAccumulator acc = new DocAccumulator(total);
+		for (int i = 0; i < lists.length; i++){
+			PostingsCursor list = lists[i];
+			if (list == null){
+				continue;
+			}
+			while (list.next()){
+				acc.add(list.doc(), list.freq(), tie(i, list.freq()));
+			}
+		}
+		TopDocs top = new TopDocs(k, acc.size());
+		acc.collect(top);
+		return top.drain();
+	}
+
+	/**
+	 * Returns the best k documents that contain any of the keywords, using the threshold algorithm.
+	 * At depth d, the d-th entry of every list is read; each document seen for the first time is
+	 * scored in full by looking up its frequency in all the lists. No document not seen yet can
+	 * score more than the sum of the frequencies at depth d, so once the k-th best score is
+	 * strictly above that sum, the rest of the lists cannot change the result. Since the lists are
+	 * in descending order of frequency, on common keywords this stops after a few entries, however
+	 * long the lists are, and the lists are only decoded that far.
+	 *
+	 * @param index Index to search
+	 * @param keywords Keywords, in order of preference for breaking ties
+	 * @param k Maximum number of documents to return
+	 * @return Ids of the matching documents, best first; null if none of the keywords is in the index
+	 */
+	static int[] threshold(IndexReader index, String[] keywords, int k) {
+		PostingsCursor[] lists = new PostingsCursor[keywords.length];
+		int total = 0;
+		for (int i = 0; i < keywords.length; i++){
+			lists[i] = index.cursor(keywords[i]);
+			if (lists[i] != null){
+				total += lists[i].size();
+			}
+		}
+		if (total == 0){
+			return null;
+		}
+		if (k == 0){
+			return new int[0];
+		}
+		// a large k is cut down to the number of postings, and both tables grow as needed
+		TopDocs top = new TopDocs(k, total);
+		DocAccumulator seen = new DocAccumulator((int)Math.min(4L*k, total));
+		boolean[] read = new boolean[lists.length];
+		while (true){
+			int bound = 0;
+			boolean more = false;
+			for (int i = 0; i < lists.length; i++){
+				read[i] = lists[i] != null && lists[i].next();
+				if (read[i]){
+					bound += lists[i].freq();
+					more = true;
+				}
+			}
+			if (!more || (top.isFull() && top.minScore() > bound)){
+				break;
+			}
+			for (int i = 0; i < lists.length; i++){
+				if (!read[i]){
+					continue;
+				}
+				int doc = lists[i].doc();
+				if (!seen.contains(doc)){
+					seen.add(doc, 0, 0);
+					score(lists, doc, top);
+				}
+			}
+		}
+		return top.drain();
+	}
+
+	/**
+	 * Adds up the frequencies of a document in all the lists, and offers it to the heap.
+	 */
+	private static void score(PostingsCursor[] lists, int doc, TopDocs top) {
+		int score = 0;
+		long tie = -1;
+		for (int i = 0; i < lists.length; i++){
+			int freq = lists[i] == null ? 0 : lists[i].frequency(doc);
+			if (freq == 0){
+				continue;
+			}
+			score += freq;
+			if (tie == -1){
+				tie = tie(i, freq);
+			}
+		}
+		top.offer(doc, score, tie);
+	}
+
+	/**
+	 * Returns the tie key of a posting: the keyword's index, then its frequency, highest first.
+	 *
+	 * @param keyword Index of the keyword
+	 * @param freq Frequency of the keyword in the document
+	 * @return Tie key, smaller keys win
+	 */
+	static long tie(int keyword, int freq) {
+		return ((long)keyword << 32) | (Integer.MAX_VALUE - freq);
+	}
+}
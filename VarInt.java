@@ -0,0 +1,45 @@
+package search;
+
+/**
+ * Variable-byte encoding of non-negative ints: 7 bits per byte, low bits first, with the high
+ * bit of a byte set when more bytes follow. Small numbers, such as the gaps between sorted
+ * positions or document ids, take a single byte.
+ *
+ */
+class VarInt {
+
+	private VarInt() {
+	}
+
+	/**
+	 * Returns the number of bytes a value takes.
+	 *
+	 * @param value Non-negative value
+	 * @return Encoded size, 1 to 5 bytes
+	 */
+	static int size(int value) {
+		int n = 1;
+		while ((value & ~0x7F) != 0){
+			value >>>= 7;
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Writes a value.
+	 *
+	 * @param buf Buffer, with at least size(value) bytes free at off
+	 * @param off Where to write
+	 * @param value Non-negative value
+	 * @return Offset just past the written bytes
+	 */
+	static int write(byte[] buf, int off, int value) {
+		while ((value & ~0x7F) != 0){
+			buf[off++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf[off++] = (byte)value;
+		return off;
+	}
+}